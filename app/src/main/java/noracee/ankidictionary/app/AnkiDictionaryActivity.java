@@ -62,6 +62,14 @@ public class AnkiDictionaryActivity extends AppCompatActivity implements UtilPro
         statusManager.setStatusButtonListener(this);
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+
+        // writes the notes still waiting for a batch before the app may be killed
+        ankiManager.flush();
+    }
+
     @Override
     public void onBackPressed() {
         if (!adapter.onBackPressed())
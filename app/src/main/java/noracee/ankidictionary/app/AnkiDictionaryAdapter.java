@@ -6,6 +6,8 @@ import android.support.v4.app.FragmentPagerAdapter;
 import android.support.v4.view.ViewPager;
 import android.view.ViewGroup;
 
+import java.util.List;
+
 import noracee.ankidictionary.entity.Vocabulary;
 import noracee.ankidictionary.util.StatusManager;
 
@@ -16,7 +18,8 @@ import noracee.ankidictionary.util.StatusManager;
 
 public class AnkiDictionaryAdapter extends FragmentPagerAdapter implements ViewPager.OnPageChangeListener,
         SearchFragment.OnSearchListener, VocabularyFragment.OnVocabularySelectListener,
-        ExampleFragment.OnExampleSelectListener, AddFragment.OnAddListener {
+        VocabularyFragment.OnResultsListener, ExampleFragment.OnExampleSelectListener,
+        AddFragment.OnAddListener {
     private static final int COUNT_FRAGMENTS = 4;
 
     private static final int POSITION_SEARCH     = 0;
@@ -105,10 +108,34 @@ public class AnkiDictionaryAdapter extends FragmentPagerAdapter implements ViewP
 
     @Override
     public void onSearch(String query) {
+        exampleFragment.cancelPrefetch();
         vocabularyFragment.search(query);
         pager.setCurrentItem(POSITION_VOCABULARY);
     }
 
+    @Override
+    public boolean onQueryChanged(String query) {
+        return vocabularyFragment.preview(query);
+    }
+
+    @Override
+    public void onLiveSearch(String query) {
+        exampleFragment.cancelPrefetch();
+        vocabularyFragment.searchLive(query);
+    }
+
+    @Override
+    public void onSentenceSearch(String sentence) {
+        exampleFragment.cancelPrefetch();
+        vocabularyFragment.searchSentence(sentence);
+        pager.setCurrentItem(POSITION_VOCABULARY);
+    }
+
+    @Override
+    public void onResults(List<String> queries) {
+        exampleFragment.prefetch(queries);
+    }
+
     @Override
     public void onVocabularySelect(Vocabulary vocabulary) {
         exampleFragment.query(vocabulary);
@@ -11,6 +11,8 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
 
+import java.util.List;
+
 import noracee.ankidictionary.R;
 import noracee.ankidictionary.dictionary.ExampleParser;
 import noracee.ankidictionary.entity.Example;
@@ -134,6 +136,13 @@ public class ExampleFragment extends NoraaceeFragment implements ExampleParser.O
         dialog.show(ft, TAG_CREATE);
     }
 
+    /**
+     * Cancels the example sentences being retrieved ahead of time
+     */
+    public void cancelPrefetch() {
+        parser.cancelPrefetch();
+    }
+
     /**
      * Clears the parser to prepare for another search query
      */
@@ -141,6 +150,15 @@ public class ExampleFragment extends NoraaceeFragment implements ExampleParser.O
         parser.clear();
     }
 
+    /**
+     * Retrieves the example sentences for queries ahead of time, before any of their vocabularies
+     * are selected
+     * @param queries queries the vocabularies shown were looked up with
+     */
+    public void prefetch(List<String> queries) {
+        parser.prefetch(queries);
+    }
+
     /**
      * Sets the {@link Vocabulary Vocabulary} and query for example sentences
      * @param vocabulary vocabulary to query example sentences for
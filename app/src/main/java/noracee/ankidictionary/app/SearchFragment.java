@@ -1,15 +1,26 @@
 package noracee.ankidictionary.app;
 
+import android.app.Activity;
+import android.content.Intent;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.inputmethod.EditorInfo;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
 import android.widget.EditText;
 import android.widget.TextView;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 import noracee.ankidictionary.R;
+import noracee.ankidictionary.dictionary.RomajiConverter;
+import noracee.ankidictionary.dictionary.WordListImporter;
 import noracee.ankidictionary.model.NoraaceeFragment;
 import noracee.ankidictionary.util.StringHelper;
 
@@ -18,19 +29,84 @@ import noracee.ankidictionary.util.StringHelper;
  */
 
 public class SearchFragment extends NoraaceeFragment implements TextView.OnEditorActionListener,
-        View.OnClickListener {
+        View.OnClickListener, TextWatcher, CompoundButton.OnCheckedChangeListener {
     /**
      * Listener to listen for when a search is queried
      */
     public interface OnSearchListener {
         void onSearch(String query);
+
+        /**
+         * Cancels the search of the previous text when the query changes while live search is
+         * enabled, and shows the results straight away if they are cached
+         * @param query query being typed
+         * @return true if the results were shown, or false if they must be searched for
+         */
+        boolean onQueryChanged(String query);
+
+        /**
+         * Searches for a query once it has not changed for a while, without leaving the page
+         * @param query query being typed
+         */
+        void onLiveSearch(String query);
+
+        /**
+         * Searches for every word of a sentence
+         * @param sentence sentence to split into words
+         */
+        void onSentenceSearch(String sentence);
     }
 
-    private static final int ERROR_SEARCH = R.string.anki_error_search;
-    private static final int TITLE_SEARCH = R.string.anki_title_search;
+    // Code used to request a word list to import
+    private static final int CODE_IMPORT = 1;
+
+    // Delay in milliseconds after the last keystroke before a live search is looked up
+    private static final int DELAY_LIVE = 300;
 
+    private static final int ERROR_DICTIONARY = R.string.anki_error_dictionary;
+    private static final int ERROR_LIST       = R.string.import_error_list;
+    private static final int ERROR_SEARCH     = R.string.anki_error_search;
+    private static final int TITLE_LIST       = R.string.import_title_list;
+    private static final int TITLE_SEARCH     = R.string.anki_title_search;
+
+    // Type of the word lists that can be imported
+    private static final String TYPE_LIST = "text/*";
+
+    // Whether the last change to the query only appended a character at its end
+    private boolean appended;
+    // Whether the query is being replaced with its conversion
+    private boolean converting;
+
+    private CheckBox liveView;
+    private CheckBox romajiView;
+    private CheckBox sentenceView;
     private EditText queryView;
     private OnSearchListener onSearchListener;
+    private RomajiConverter converter;
+    private Runnable liveSearch;
+    private WordListImporter importer;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        try {
+            importer = new WordListImporter(getContext());
+        } catch (IOException e) {
+            utilProvider.getStatusManager().error(ERROR_DICTIONARY);
+        }
+
+        converter = new RomajiConverter();
+
+        liveSearch = new Runnable() {
+            @Override
+            public void run() {
+                String query = getQuery();
+                if (query.length() > 0 && onSearchListener != null)
+                    onSearchListener.onLiveSearch(query);
+            }
+        };
+    }
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup parent, Bundle savedInstanceState) {
@@ -38,8 +114,14 @@ public class SearchFragment extends NoraaceeFragment implements TextView.OnEdito
 
         queryView = view.findViewById(R.id.query);
         queryView.setOnEditorActionListener(this);
+        queryView.addTextChangedListener(this);
+
+        liveView = view.findViewById(R.id.live);
+        romajiView = view.findViewById(R.id.romaji);
+        sentenceView = view.findViewById(R.id.sentence);
 
         view.findViewById(R.id.search).setOnClickListener(this);
+        view.findViewById(R.id.importList).setOnClickListener(this);
 
         return view;
     }
@@ -49,12 +131,52 @@ public class SearchFragment extends NoraaceeFragment implements TextView.OnEdito
         super.onActivityCreated(savedInstanceState);
 
         onSearchListener = ((AnkiDictionaryActivity) getContext()).getListener();
+
+        liveView.setChecked(utilProvider.getSharedPreferencesManager().isLiveSearch());
+        liveView.setOnCheckedChangeListener(this);
+        romajiView.setChecked(utilProvider.getSharedPreferencesManager().isRomajiInput());
+        romajiView.setOnCheckedChangeListener(this);
+        sentenceView.setChecked(utilProvider.getSharedPreferencesManager().isSentenceSearch());
+        sentenceView.setOnCheckedChangeListener(this);
+
+        if (importer != null) {
+            importer.setUtilProvider(utilProvider);
+
+            // resumes an import interrupted by the app being closed
+            if (importer.hasProgress())
+                importer.resume();
+        }
+    }
+
+    @Override
+    public void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+
+        if (requestCode != CODE_IMPORT || resultCode != Activity.RESULT_OK || data == null)
+            return;
+
+        try {
+            InputStream list = getContext().getContentResolver().openInputStream(data.getData());
+            if (list == null)
+                throw new IOException("No word list at " + data.getData());
+
+            importer.start(list);
+        } catch (IOException e) {
+            e.printStackTrace();
+            utilProvider.getStatusManager().error(ERROR_LIST);
+        }
     }
 
     @Override
     public void onDetach() {
         super.onDetach();
         onSearchListener = null;
+        queryView.removeCallbacks(liveSearch);
+
+        if (importer != null) {
+            importer.stop();
+            importer.removeUtilProvider();
+        }
     }
 
     @Override
@@ -62,6 +184,59 @@ public class SearchFragment extends NoraaceeFragment implements TextView.OnEdito
         utilProvider.getStatusManager().title(TITLE_SEARCH);
     }
 
+    @Override
+    public void afterTextChanged(Editable editable) {
+        if (converting)
+            return;
+
+        if (romajiView.isChecked())
+            convert(editable);
+
+        // a sentence is only split once it is complete
+        if (!liveView.isChecked() || sentenceView.isChecked() || onSearchListener == null)
+            return;
+
+        // every keystroke cancels the search of the previous text, and only the last one is
+        // searched for once typing pauses, unless its results are already cached
+        queryView.removeCallbacks(liveSearch);
+        if (!onSearchListener.onQueryChanged(getQuery()))
+            queryView.postDelayed(liveSearch, DELAY_LIVE);
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence text, int start, int count, int after) {
+
+    }
+
+    @Override
+    public void onTextChanged(CharSequence text, int start, int before, int count) {
+        if (!converting)
+            appended = before == 0 && count == 1 && start + count == text.length();
+    }
+
+    @Override
+    public void onCheckedChanged(CompoundButton button, boolean checked) {
+        switch (button.getId()) {
+            case R.id.live:
+                utilProvider.getSharedPreferencesManager().setLiveSearch(checked);
+                if (!checked)
+                    queryView.removeCallbacks(liveSearch);
+                break;
+            case R.id.romaji:
+                utilProvider.getSharedPreferencesManager().setRomajiInput(checked);
+                if (checked) {
+                    appended = false;
+                    convert(queryView.getText());
+                }
+                break;
+            case R.id.sentence:
+                utilProvider.getSharedPreferencesManager().setSentenceSearch(checked);
+                if (checked)
+                    queryView.removeCallbacks(liveSearch);
+                break;
+        }
+    }
+
     @Override
     public boolean onEditorAction(TextView textView, int actionId, KeyEvent keyEvent) {
         if (actionId == EditorInfo.IME_ACTION_SEARCH) {
@@ -73,7 +248,14 @@ public class SearchFragment extends NoraaceeFragment implements TextView.OnEdito
 
     @Override
     public void onClick(View view) {
-        search();
+        switch(view.getId()) {
+            case R.id.search:
+                search();
+                break;
+            case R.id.importList:
+                importList();
+                break;
+        }
     }
 
     /**
@@ -83,15 +265,65 @@ public class SearchFragment extends NoraaceeFragment implements TextView.OnEdito
         queryView.setText("");
     }
 
+    /**
+     * Asks for a word list to import into Anki
+     */
+    public void importList() {
+        if (importer == null)
+            return;
+
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType(TYPE_LIST);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+
+        String title = utilProvider.getResourceManager().getString(TITLE_LIST);
+        startActivityForResult(Intent.createChooser(intent, title), CODE_IMPORT);
+    }
+
     /**
      * Commences search for dictionary definitions
      */
     public void search() {
-        String query = StringHelper.getText(queryView);
+        queryView.removeCallbacks(liveSearch);
+        String query = getQuery();
 
-        if (query.length() > 0)
+        if (query.length() > 0 && sentenceView.isChecked())
+            onSearchListener.onSentenceSearch(query);
+        else if (query.length() > 0)
             onSearchListener.onSearch(query);
         else
             utilProvider.getStatusManager().error(ERROR_SEARCH);
     }
+
+    /**
+     * Converts the romaji typed into the query into kana, only converting the character typed if
+     * it was appended to the end, and otherwise converting the whole query again
+     * @param editable query
+     */
+    private void convert(Editable editable) {
+        if (appended) {
+            converter.type(editable.charAt(editable.length() - 1));
+        } else {
+            converter.reset();
+            for (int i = 0; i < editable.length(); i++)
+                converter.type(editable.charAt(i));
+        }
+
+        String text = converter.getText();
+        if (text.contentEquals(editable))
+            return;
+
+        converting = true;
+        editable.replace(0, editable.length(), text);
+        converting = false;
+    }
+
+    /**
+     * Retrieves the query to search for, completing any romaji left at its end
+     * @return query
+     */
+    private String getQuery() {
+        String query = StringHelper.getText(queryView);
+        return romajiView.isChecked() ? RomajiConverter.convert(query).trim() : query;
+    }
 }
@@ -9,6 +9,7 @@ import android.widget.TextView;
 import noracee.ankidictionary.R;
 import noracee.ankidictionary.entity.Vocabulary;
 import noracee.ankidictionary.dictionary.DictionaryParser;
+import noracee.ankidictionary.util.AnkiManager;
 
 /**
  * An adapter for a list of {@link Vocabulary Vocabulary} for a ListView
@@ -19,6 +20,7 @@ public class VocabularyAdapter extends RecyclerView.Adapter<VocabularyAdapter.Vi
      * Class for holding a view for a {@link Vocabulary Vocabulary}
      */
     class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        final TextView addedView;
         final TextView kanjiView;
         final TextView readingView;
         final TextView defView;
@@ -31,6 +33,7 @@ public class VocabularyAdapter extends RecyclerView.Adapter<VocabularyAdapter.Vi
 
             itemView.setOnClickListener(this);
 
+            addedView = itemView.findViewById(R.id.added);
             kanjiView = itemView.findViewById(R.id.kanji);
             readingView = itemView.findViewById(R.id.reading);
             defView = itemView.findViewById(R.id.def);
@@ -46,6 +49,7 @@ public class VocabularyAdapter extends RecyclerView.Adapter<VocabularyAdapter.Vi
         }
     }
 
+    private AnkiManager ankiManager;
     private DictionaryParser parser;
     private VocabularyFragment.OnVocabularySelectListener listener;
 
@@ -64,6 +68,8 @@ public class VocabularyAdapter extends RecyclerView.Adapter<VocabularyAdapter.Vi
     @Override
     public void onBindViewHolder(ViewHolder holder, int position) {
         Vocabulary vocabulary = parser.get(position);
+        holder.addedView.setVisibility(ankiManager != null && ankiManager.isAdded(vocabulary)
+                ? View.VISIBLE : View.GONE);
         holder.kanjiView.setText(vocabulary.getKanji());
         holder.readingView.setText(vocabulary.getReading());
         holder.defView.setText(vocabulary.getDefinitions());
@@ -77,6 +83,14 @@ public class VocabularyAdapter extends RecyclerView.Adapter<VocabularyAdapter.Vi
         return parser.size();
     }
 
+    /**
+     * Sets the manager used to check which vocabularies are already in Anki
+     * @param ankiManager {@link AnkiManager AnkiManager}, or null to stop checking
+     */
+    void setAnkiManager(AnkiManager ankiManager) {
+        this.ankiManager = ankiManager;
+    }
+
     /**
      * Sets the listener to listen for when a vocabulary is selected
      * @param listener listener to listen for vocabulary selection
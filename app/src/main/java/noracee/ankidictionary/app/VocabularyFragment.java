@@ -8,17 +8,23 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 import noracee.ankidictionary.R;
 import noracee.ankidictionary.entity.Vocabulary;
 import noracee.ankidictionary.model.NoraaceeFragment;
 import noracee.ankidictionary.dictionary.DictionaryParser;
+import noracee.ankidictionary.util.AnkiManager;
 
 /**
  * Fragment that will provide and manage the View that deals with {@link noracee.ankidictionary.entity.Vocabulary Vocabulary}
  */
 
-public class VocabularyFragment extends NoraaceeFragment implements DictionaryParser.OnDataSetChangedListener {
+public class VocabularyFragment extends NoraaceeFragment implements DictionaryParser.OnDataSetChangedListener,
+        AnkiManager.OnNotesChangedListener {
     /**
      * Listener to listen for when a {@link Vocabulary Vocabulary} is selected
      */
@@ -26,12 +32,29 @@ public class VocabularyFragment extends NoraaceeFragment implements DictionaryPa
         void onVocabularySelect(Vocabulary vocabulary);
     }
 
+    /**
+     * Listener to listen for when the first vocabularies of a query are shown, with the queries
+     * they were looked up with
+     */
+    public interface OnResultsListener {
+        void onResults(List<String> queries);
+    }
+
     private static final int ERROR_DICTIONARY = R.string.anki_error_dictionary;
     private static final int STATUS_SEARCHING = R.string.status_searching;
     private static final int TITLE_VOCABULARY = R.string.anki_title_vocabulary;
 
+    // Number of the first vocabularies shown whose examples are prefetched
+    private static final int COUNT_PREFETCH = 5;
+
+    // whether the current query is still being typed or is a sentence, so its examples are not
+    // prefetched
+    private boolean live;
+
     private DictionaryParser parser;
+    private OnResultsListener onResultsListener;
     private OnVocabularySelectListener onVocabularySelectListener;
+    private List<String> resultsQueries;
     private VocabularyAdapter adapter;
 
     @Override
@@ -64,14 +87,22 @@ public class VocabularyFragment extends NoraaceeFragment implements DictionaryPa
         parser.setUtilProvider(utilProvider);
 
         onVocabularySelectListener = ((AnkiDictionaryActivity) getContext()).getListener();
+        onResultsListener = ((AnkiDictionaryActivity) getContext()).getListener();
         adapter.setListener(onVocabularySelectListener);
+        adapter.setAnkiManager(utilProvider.getAnkiManager());
+        utilProvider.getAnkiManager().setOnNotesChangedListener(this);
     }
 
     @Override
     public void onDetach() {
+        // the util provider is removed once detached
+        utilProvider.getAnkiManager().removeOnNotesChangedListener();
+
         super.onDetach();
+        onResultsListener = null;
         onVocabularySelectListener = null;
         adapter.removeListener();
+        adapter.setAnkiManager(null);
         parser.removeUtilProvider();
     }
 
@@ -84,6 +115,19 @@ public class VocabularyFragment extends NoraaceeFragment implements DictionaryPa
     public void onDataSetChanged() {
         adapter.notifyDataSetChanged();
         setTitle();
+        notifyResults();
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        adapter.notifyItemRangeInserted(positionStart, itemCount);
+        setTitle();
+        notifyResults();
+    }
+
+    @Override
+    public void onNotesChanged() {
+        adapter.notifyDataSetChanged();
     }
 
     /**
@@ -93,11 +137,75 @@ public class VocabularyFragment extends NoraaceeFragment implements DictionaryPa
         parser.clear();
     }
 
+    /**
+     * Shows the vocabularies of a query that is still being typed if they are cached, cancelling
+     * the query of the previous text
+     * @param query query being typed
+     * @return true if the vocabularies were shown, or false if they must be searched for
+     */
+    public boolean preview(String query) {
+        live = true;
+        return parser.preview(query);
+    }
+
     /**
      * Commences query for the specified vocabulary
      * @param query query to search for
      */
     public void search(String query) {
+        search(query, false);
+    }
+
+    /**
+     * Commences query for a vocabulary that is still being typed, without prefetching its
+     * examples
+     * @param query query to search for
+     */
+    public void searchLive(String query) {
+        search(query, true);
+    }
+
+    /**
+     * Commences query for every word of a sentence, without prefetching examples of the sentence
+     * @param sentence sentence to split into words
+     */
+    public void searchSentence(String sentence) {
+        live = true;
+        resultsQueries = null;
+        utilProvider.getStatusManager().status(STATUS_SEARCHING);
+        parser.querySentence(sentence);
+    }
+
+    /**
+     * Notifies the listener once the first vocabularies of the current query are shown, unless
+     * the query is still being typed
+     */
+    private void notifyResults() {
+        if (live || parser.size() == 0)
+            return;
+
+        // examples are requested by the query each vocabulary was looked up with
+        Set<String> distinct = new LinkedHashSet<>();
+        for (int i = 0; i < parser.size() && i < COUNT_PREFETCH; i++)
+            distinct.add(parser.get(i).getQuery());
+
+        List<String> queries = new ArrayList<>(distinct);
+        if (queries.equals(resultsQueries))
+            return;
+
+        resultsQueries = queries;
+        if (onResultsListener != null)
+            onResultsListener.onResults(queries);
+    }
+
+    /**
+     * Commences query for the specified vocabulary
+     * @param query query to search for
+     * @param live whether the query is still being typed
+     */
+    private void search(String query, boolean live) {
+        this.live = live;
+        resultsQueries = null;
         utilProvider.getStatusManager().status(STATUS_SEARCHING);
         parser.query(query);
     }
@@ -1,23 +1,39 @@
 package noracee.ankidictionary.dictionary;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
 
 import com.android.volley.Response;
 
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import noracee.ankidictionary.R;
 import noracee.ankidictionary.entity.Vocabulary;
 import noracee.ankidictionary.util.HttpManager;
 import noracee.ankidictionary.util.StatusManager;
-import noracee.ankidictionary.util.StringHelper;
 import noracee.ankidictionary.util.UtilProvider;
 
 /**
- * Queries the server for vocabulary definitions and parses it
+ * Queries the local dictionary index or the server for vocabulary definitions and parses it.
+ * Lookups and parsing run off the main thread, and only unmodifiable result lists are published on
+ * the main thread. Responses from the server are parsed while they are downloaded, and the
+ * vocabularies are published in batches as soon as their lines arrive
  */
 
 public class DictionaryParser {
@@ -26,54 +42,39 @@ public class DictionaryParser {
      */
     public interface OnDataSetChangedListener {
         void onDataSetChanged();
+        void onItemRangeInserted(int positionStart, int itemCount);
     }
 
-    // Capacity for the StringBuilder
-    private static final int CAPACITY_DEF = 100;
-    private static final int CAPACITY_POS = 16;
+    // Channel of the requests of this parser, where a new request cancels the previous one
+    private static final String CHANNEL = "dictionary";
 
     // Error message for when there is no response to extract
     private static final int ERROR_RESULTS = R.string.anki_error_results;
+    // Error messages for when a sentence cannot be split into words
+    private static final int ERROR_SENTENCE       = R.string.anki_error_sentence;
+    private static final int ERROR_SENTENCE_WORDS = R.string.anki_error_sentence_words;
 
-    // Delimiter to separate entities
-    private static final String DELIMITER_DEF = ", ";
-    private static final String DELIMITER_POS = "　";
-
-    /// Regex for parsing
-    /// Example response:
-    /// kanji1(P);kanji2(oK) [reading1(P);reading2(ok)] /(pos) (1) (See ...) definition/(pos) (2) definition2/(P)/
-    // Extracts codes from the response
-    private static final String REGEX_CODE       = "\\(([^)]+)\\)";
-    // Separates parts of speech within the same definition
-    private static final String REGEX_CODE_DEFS  = ",";
-    // Separates definitions
-    private static final String REGEX_DEFS       = "/";
-    // Extracts domains out of definitions
-    private static final String REGEX_DOMAINS    = "\\{([^}]+)\\}";
-    // Checks if section applies specifically to current vocabulary
-    private static final String REGEX_ESPECIALLY = "\\((esp.[^)]+)\\)";
-    // Separates kanji from readings
-    private static final String REGEX_LITERAL    = "\\s";
-    // Checks if section applies to current vocabulary
-    private static final String REGEX_ONLY       = "\\(([\\s\\S]+)only\\)";
-    // Separates kanji and reading from definitions
-    private static final String REGEX_PARTS      = " /";
-    // Extracts all the readings
-    private static final String REGEX_READINGS   = "\\[([^]]+)\\]";
-    // Extracts dictionary vocabularies from HTML DOM
-    private static final String REGEX_RESPONSE   = "<pre>\\R([\\s\\S]+)\\R</pre>";
-    // Separates dictionary vocabularies
-    private static final String REGEX_RESULTS    = "\\R";
-    // Extracts "See" tags in the definitions
-    private static final String REGEX_SEE        = "\\((See[^)]+)\\)";
-    // Separates kanji and reading sets
-    private static final String REGEX_SET        = ";";
+    // Fraction of the maximum heap that cached results may take up
+    private static final int FRACTION_CACHE = 32;
+
+    // Name of the local dictionary index in the assets
+    private static final String FILE_INDEX = "dictionary.idx";
 
     //Query URL
     private static final String URL = "http://nihongo.monash.edu/cgi-bin/wwwjdic?1ZUJ";
 
-    private ArrayList<Vocabulary> vocabularies;
-    private DictionaryCodes codes;
+    // Code classification shared by every parser of the process, loaded once off the main thread
+    private static Future<DictionaryCodes> sharedCodes;
+
+    // Incremented on every query, so that results of superseded queries are dropped
+    private volatile int generation;
+
+    private List<Vocabulary> vocabularies;
+    private Deinflector deinflector;
+    private DictionaryIndex index;
+    private VocabularyCache cache;
+    private EdictTokenizer tokenizer;
+    private Segmenter segmenter;
     private HttpManager httpManager;
     private OnDataSetChangedListener onDataSetChangedListener;
     private StatusManager statusManager;
@@ -81,8 +82,19 @@ public class DictionaryParser {
 
     public DictionaryParser(Context context)
             throws IOException {
-        codes = new DictionaryCodes(context);
-        vocabularies = new ArrayList<>();
+        this(context, (int) (Runtime.getRuntime().maxMemory() / FRACTION_CACHE));
+    }
+
+    /**
+     * @param context context of the app
+     * @param cacheSize maximum estimated number of bytes of the results cached
+     * @throws IOException if the local dictionary index exists but cannot be read
+     */
+    DictionaryParser(Context context, int cacheSize) throws IOException {
+        index = openIndex(context);
+        loadCodes(context);
+        vocabularies = Collections.emptyList();
+        cache = new VocabularyCache(cacheSize);
         query = "";
     }
 
@@ -90,8 +102,11 @@ public class DictionaryParser {
      * Clears the list in this adapter
      */
     public void clear() {
-        vocabularies.clear();
-        notifyDataSetChanged();
+        generation++;
+        if (httpManager != null)
+            httpManager.cancelAll(CHANNEL);
+
+        publish(Collections.<Vocabulary>emptyList());
     }
 
     /**
@@ -103,6 +118,22 @@ public class DictionaryParser {
         return vocabularies.get(index);
     }
 
+    /**
+     * Retrieves the number of queries answered from the result cache
+     * @return number of cache hits
+     */
+    public int getCacheHits() {
+        return cache.hitCount();
+    }
+
+    /**
+     * Retrieves the number of queries that had to be looked up because they were not cached
+     * @return number of cache misses
+     */
+    public int getCacheMisses() {
+        return cache.missCount();
+    }
+
     /**
      * Retrieves the most recent query searched for
      * @return most recent query
@@ -112,20 +143,180 @@ public class DictionaryParser {
     }
 
     /**
-     * Sends an HTTP GET request to retrieve dictionary vocabularies for given word
+     * Looks up dictionary vocabularies for a word as with {@link #query(String)}, without changing
+     * the vocabulary list nor showing any status, e.g. to import a list of words
+     * @param tag tag of the channel to request the vocabularies on
      * @param query word to search the dictionary for
+     * @param listener listener to trigger with the vocabularies found, or null if the response had
+     *                 none or the word is blank, which may be triggered again once a cached
+     *                 response is revalidated
+     * @param errorListener listener to trigger if the vocabularies cannot be retrieved
      */
-    public void query (final String query) {
-        vocabularies.clear();
-        notifyDataSetChanged();
-        this.query = query;
+    public void lookup(final Object tag, String query,
+                       final Response.Listener<List<Vocabulary>> listener,
+                       final Response.ErrorListener errorListener) {
+        final String normalized = KanaNormalizer.normalize(query);
+        if (normalized.isEmpty()) {
+            listener.onResponse(null);
+            return;
+        }
 
-        httpManager.get(URL + query, new Response.Listener<String>() {
+        List<Vocabulary> cached = cache.get(normalized);
+        if (cached != null) {
+            listener.onResponse(cached);
+            return;
+        }
+
+        if (index == null) {
+            httpManager.stream(tag, URL + normalized, new VocabularyStreamParser(normalized),
+                    listener, errorListener);
+            return;
+        }
+
+        httpManager.execute(new HttpManager.Task<List<Vocabulary>>() {
+            @Override
+            public List<Vocabulary> run() {
+                return lookupIndex(normalized);
+            }
+        }, new Response.Listener<List<Vocabulary>>() {
             @Override
-            public void onResponse(String response) {
-                extract(query, response);
-                statusManager.closeStatus();
-                notifyDataSetChanged();
+            public void onResponse(List<Vocabulary> results) {
+                if (results != null)
+                    listener.onResponse(results);
+                else
+                    httpManager.stream(tag, URL + normalized,
+                            new VocabularyStreamParser(normalized), listener, errorListener);
+            }
+        });
+    }
+
+    /**
+     * Cancels the current query for a word that is still being typed, and shows its vocabularies
+     * straight away if they are in the result cache, without looking them up anywhere else
+     * @param query word being typed
+     * @return true if the vocabularies were cached and shown, or the word is blank and there are
+     *         none to show, or false if they must be queried
+     */
+    public boolean preview(String query) {
+        generation++;
+        if (httpManager != null)
+            httpManager.cancelAll(CHANNEL);
+        statusManager.closeStatus();
+
+        String normalized = KanaNormalizer.normalize(query);
+        List<Vocabulary> cached = normalized.isEmpty()
+                ? Collections.<Vocabulary>emptyList()
+                : cache.get(normalized);
+        if (cached == null)
+            return false;
+
+        this.query = normalized;
+        publish(cached);
+        return true;
+    }
+
+    /**
+     * Looks up dictionary vocabularies for given word in the result cache, then in the local
+     * dictionary index, or sends an HTTP GET request to retrieve them if neither has any. A blank
+     * word only clears the vocabulary list
+     * @param query word to search the dictionary for
+     */
+    public void query(String query) {
+        final int generation = ++this.generation;
+        publish(Collections.<Vocabulary>emptyList());
+
+        final String normalized = KanaNormalizer.normalize(query);
+        this.query = normalized;
+
+        if (normalized.isEmpty()) {
+            httpManager.cancelAll(CHANNEL);
+            statusManager.closeStatus();
+            return;
+        }
+
+        List<Vocabulary> cached = cache.get(normalized);
+        if (cached != null) {
+            httpManager.cancelAll(CHANNEL);
+            publish(cached);
+            statusManager.closeStatus();
+            return;
+        }
+
+        if (index == null) {
+            request(normalized, generation);
+            return;
+        }
+
+        httpManager.execute(new HttpManager.Task<List<Vocabulary>>() {
+            @Override
+            public List<Vocabulary> run() {
+                if (isSuperseded(generation))
+                    return null;
+
+                return lookupIndex(normalized);
+            }
+        }, new Response.Listener<List<Vocabulary>>() {
+            @Override
+            public void onResponse(List<Vocabulary> results) {
+                if (isSuperseded(generation))
+                    return;
+
+                if (results != null) {
+                    httpManager.cancelAll(CHANNEL);
+                    publish(results);
+                    statusManager.closeStatus();
+                } else {
+                    request(normalized, generation);
+                }
+            }
+        });
+    }
+
+    /**
+     * Splits a sentence into words with the local dictionary index, and shows the vocabularies of
+     * every word in the order they appear in the sentence. A blank sentence only clears the
+     * vocabulary list
+     * @param sentence sentence to split
+     */
+    public void querySentence(String sentence) {
+        final int generation = ++this.generation;
+        publish(Collections.<Vocabulary>emptyList());
+        httpManager.cancelAll(CHANNEL);
+
+        final String normalized = KanaNormalizer.normalize(sentence);
+        this.query = normalized;
+
+        if (normalized.isEmpty()) {
+            statusManager.closeStatus();
+            return;
+        }
+
+        // the server only looks up single words
+        if (index == null) {
+            statusManager.error(ERROR_SENTENCE);
+            return;
+        }
+
+        httpManager.execute(new HttpManager.Task<List<Vocabulary>>() {
+            @Override
+            public List<Vocabulary> run() {
+                if (isSuperseded(generation))
+                    return null;
+
+                return lookupSentence(normalized);
+            }
+        }, new Response.Listener<List<Vocabulary>>() {
+            @Override
+            public void onResponse(List<Vocabulary> results) {
+                if (isSuperseded(generation))
+                    return;
+
+                if (results != null && !results.isEmpty()) {
+                    publish(results);
+                    statusManager.closeStatus();
+                } else {
+                    statusManager.error(ERROR_SENTENCE_WORDS);
+                }
             }
         });
     }
@@ -166,348 +357,306 @@ public class DictionaryParser {
     }
 
     /**
-     * Extracts the relevant result from the HTML DOM response
-     * @param response response containing entire HTML DOM
+     * Retrieves the shared code classification, waiting for it to be loaded. Must not be called
+     * on the main thread
+     * @return code classification
+     * @throws IOException if the codes file cannot be read
      */
-    private void extract (String query, String response) {
-        Matcher m = Pattern.compile(REGEX_RESPONSE).matcher(response);
-        if (m.find())
-            parse(query, m.group(1));
-        else
-            statusManager.error(ERROR_RESULTS);
+    private static DictionaryCodes getCodes() throws IOException {
+        try {
+            return sharedCodes.get();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
     }
 
     /**
-     * Notifies any listeners that the data set has been changed
+     * Checks whether a newer query has been searched for, or the results have been cleared
+     * @param generation generation of the query
+     * @return true if the results of the query must be dropped
      */
-    private void notifyDataSetChanged() {
-        if (onDataSetChangedListener != null)
-            onDataSetChangedListener.onDataSetChanged();
+    private boolean isSuperseded(int generation) {
+        return generation != this.generation;
     }
 
     /**
-     * Separates the the kanji and readings from the definitions
-     * @param result result extracted from the HTML DOM
+     * Starts loading the shared code classification on a thread of its own, unless it has already
+     * been loaded by an earlier parser, so that creating a parser never parses the codes file
+     * @param context context of the app
      */
-    private void parse(String query, String result) {
-        for (String vocabularyRaw : result.split(REGEX_RESULTS)) {
-            Vocabulary vocabulary = new Vocabulary(query, vocabularyRaw);
-
-            String[] parts = vocabularyRaw.split(REGEX_PARTS, 2);
-
-            parseLiteral(vocabulary, parts[0].split(REGEX_LITERAL));
-            parseSections(vocabulary, parts[1].split(REGEX_DEFS));
+    private static synchronized void loadCodes(Context context) {
+        if (sharedCodes != null)
+            return;
 
-            vocabularies.add(vocabulary);
-        }
-    }
+        final Resources resources = context.getApplicationContext().getResources();
+        FutureTask<DictionaryCodes> task = new FutureTask<>(new Callable<DictionaryCodes>() {
+            @Override
+            public DictionaryCodes call() throws IOException {
+                return new DictionaryCodes(resources.openRawResource(R.raw.dictionary_codes));
+            }
+        });
 
-    /**
-     * Adds the section to the definition buffer
-     * @param section section to add
-     * @param def definition buffer
-     */
-    private void parseDefinition(StringBuilder section, StringBuilder def) {
-        String sectionString = section.toString().trim();
-        if (!sectionString.isEmpty()) {
-            if (def.length() == 0)
-                def.append(sectionString);
-            else
-                def.append(DELIMITER_DEF).append(sectionString);
-        }
+        new Thread(task).start();
+        sharedCodes = task;
     }
 
     /**
-     * Checks if this section contains a domain and parses it
-     * @param vocabulary Vocabulary to add tags to
-     * @param section section to be parsed
-     * @param pos parts of speech buffer to add domain to
-     * @return true if this domain is not important and section should be discarded, or false
-     * otherwise
+     * Looks up the vocabularies of a query in the local dictionary index and caches them, on the
+     * background thread. Conjugated queries are also turned into the dictionary forms they may come
+     * from, which are looked up together and kept if their entries are of the right class
+     * @param query normalized query
+     * @return vocabularies found, or null if the index has none
      */
-    private boolean parseDomain(Vocabulary vocabulary, StringBuilder section, StringBuilder pos) {
-        Matcher m = Pattern.compile(REGEX_DOMAINS).matcher(section);
-        while(m.find()) {
-            String match = m.group(1);
-            if (codes.getCode(match)) {
-                // only removes this part if it is a domain
-                StringHelper.remove(section, "{" + match + "}");
-
-                // checks if domain is important
-                match = codes.getCodeUsed(match);
-                if (match != null) {
-                    vocabulary.addTag(match);
-
-                    if (pos.length() == 0)
-                        pos.append(match);
-                    else
-                        pos.append(DELIMITER_POS).append(match);
-                } else {
-                    return true;
+    private List<Vocabulary> lookupIndex(String query) {
+        // the server is queried instead, where the error is reported
+        if (!prepareIndex())
+            return null;
+
+        List<String> lines = index.lookup(query);
+        List<Deinflector.Form> forms = deinflector.deinflect(query);
+        if (lines.isEmpty() && forms.isEmpty())
+            return null;
+
+        List<Vocabulary> results = new ArrayList<>(lines.size());
+        Set<String> found = new HashSet<>(lines);
+        for (String line : lines)
+            results.add(tokenizer.parseLine(query, line));
+
+        if (!forms.isEmpty()) {
+            Map<String, Deinflector.Form> words = new LinkedHashMap<>();
+            for (Deinflector.Form form : forms)
+                words.put(form.getWord(), form);
+
+            Map<String, List<String>> matches = index.lookupExact(words.keySet());
+            for (Map.Entry<String, List<String>> entry : matches.entrySet()) {
+                Deinflector.Form form = words.get(entry.getKey());
+                for (String line : entry.getValue()) {
+                    if (deinflector.matches(form, line) && found.add(line))
+                        results.add(tokenizer.parseLine(form.getWord(), line));
                 }
             }
         }
 
-        return false;
+        if (results.isEmpty())
+            return null;
+
+        cache.put(query, results);
+        return results;
     }
 
     /**
-     * Checks if this section specifically applies to the current {@link Vocabulary Vocabulary}
-     * @param vocabulary Vocabulary to check
-     * @param section section to be checked
+     * Splits a sentence into words with the local dictionary index, on the background thread
+     * @param sentence normalized sentence
+     * @return vocabularies of every word, each only once, or null if the codes cannot be read
      */
-    private void parseEspecially(Vocabulary vocabulary, StringBuilder section) {
-        Matcher m = Pattern.compile(REGEX_ESPECIALLY).matcher(section);
-        if (m.find()) {
-            String match = m.group(1);
-            if (match.contains(vocabulary.getQuery()))
-                StringHelper.remove(section,"(" + match + ")");
+    private List<Vocabulary> lookupSentence(String sentence) {
+        if (!prepareIndex())
+            return null;
+
+        List<Vocabulary> results = new ArrayList<>();
+        Set<String> found = new HashSet<>();
+        for (Segmenter.Segment segment : segmenter.segment(sentence)) {
+            for (String line : segment.getLines()) {
+                if (found.add(line))
+                    results.add(tokenizer.parseLine(segment.getWord(), line));
+            }
         }
+
+        return results;
     }
 
     /**
-     * Extracts any codes from the kanji, then adds it into the {@link Vocabulary Vocabulary},
-     * ignoring any kanji that doesn't match the query
-     * @param vocabulary Vocabulary to be parsed into
-     * @param kanji kanji to parse
+     * Notifies any listeners that vocabularies have been added to the end of the data set
      */
-    private void parseKanji(Vocabulary vocabulary, String kanji) {
-        if (kanji.contains(vocabulary.getQuery())) {
-            Matcher m = Pattern.compile(REGEX_CODE).matcher(kanji);
-            if (m.find()) {
-                String match = m.group(1);
-                if (codes.getLiteralUsed(match))
-                    kanji = kanji.replace("(" + match + ")", "");
-            }
-
-            vocabulary.addKanji(kanji);
-        }
+    private void notifyItemRangeInserted(int positionStart, int itemCount) {
+        if (onDataSetChangedListener != null)
+            onDataSetChangedListener.onItemRangeInserted(positionStart, itemCount);
     }
 
     /**
-     * Parses the kanjis
-     * @param vocabulary Vocabulary to be parsed into
-     * @param kanjiString kanjis to parse
+     * Notifies any listeners that the data set has been changed
      */
-    private void parseKanjis(Vocabulary vocabulary, String kanjiString) {
-        if (kanjiString.contains(REGEX_SET)) {
-            String[] kanjis = kanjiString.split(REGEX_SET);
-            for (String kanji : kanjis)
-                parseKanji(vocabulary, kanji);
-        } else {
-            parseKanji(vocabulary, kanjiString);
-        }
+    private void notifyDataSetChanged() {
+        if (onDataSetChangedListener != null)
+            onDataSetChangedListener.onDataSetChanged();
     }
 
     /**
-     * Parses the kanjis and readings
-     * @param vocabulary Vocabulary to be parsed into
-     * @param literal list of kanjis and readings to be parsed
+     * Maps the local dictionary index from the assets
+     * @param context context of the app
+     * @return dictionary index, or null if the app was built without one
+     * @throws IOException if the index exists but cannot be read
      */
-    private void parseLiteral(Vocabulary vocabulary, String[] literal) {
-        parseKanjis(vocabulary, literal[0]);
+    private DictionaryIndex openIndex(Context context) throws IOException {
+        AssetFileDescriptor fd;
+        try {
+            fd = context.getAssets().openFd(FILE_INDEX);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
 
-        if (literal.length > 1)
-            parseReadings(vocabulary, literal[1]);
+        try {
+            return DictionaryIndex.map(fd.createInputStream(), fd.getStartOffset(),
+                    fd.getDeclaredLength());
+        } finally {
+            fd.close();
+        }
     }
 
     /**
-     * Checks if it is a new definition section, adds the previous section to the
-     * {@link Vocabulary Vocabulary} and clears all buffers
-     * @param vocabulary Vocabulary to add definitions and parts of speech to
-     * @param section section to be parsed
-     * @param def definitions buffer
-     * @param pos parts of speech buffer
-     * @return true if this is a start of a new section, or false otherwise
+     * Creates what looking up the local dictionary index takes, only ever on the single background
+     * thread, so that it is created there once
+     * @return true if it was created, or false if the codes cannot be read
      */
-    private boolean parseNewSection(Vocabulary vocabulary, int index, StringBuilder section,
-                                    StringBuilder def, StringBuilder pos) {
-        String indexString = "(" + index + ")";
-        if (StringHelper.contains(section, indexString)) {
-            StringHelper.remove(section, indexString);
-
-            // if there is anything to add to vocabulary
-            if (def.length() > 0) {
-                vocabulary.addDefinition(def.toString());
-                vocabulary.addPartsOfSpeech(pos.toString());
-            }
-
-            StringHelper.clear(def);
-            StringHelper.clear(pos);
-
+    private boolean prepareIndex() {
+        if (tokenizer != null)
             return true;
+
+        try {
+            DictionaryCodes codes = getCodes();
+            deinflector = new Deinflector(codes);
+            segmenter = new Segmenter(index, codes, deinflector);
+            tokenizer = new EdictTokenizer(codes);
+        } catch (IOException e) {
+            return false;
         }
 
-        return false;
+        return true;
     }
 
     /**
-     * Checks if this section applies to the current {@link Vocabulary Vocabulary}
-     * @param vocabulary Vocabulary to check
-     * @param section section to be check
-     * @return true if this section does not belong to the {@link Vocabulary Vocabulary} and should
-     * be discarded, or false otherwise
+     * Replaces the vocabulary list with the results of a query and notifies any listeners
+     * @param results complete results, which are no longer modified
      */
-    private boolean parseOnly(Vocabulary vocabulary, StringBuilder section) {
-        Matcher m = Pattern.compile(REGEX_ONLY).matcher(section);
-        if(m.find()) {
-            String match = m.group(1);
-            if (!match.contains(vocabulary.getQuery()))
-                return true;
-            else
-                StringHelper.remove(section,"(" + match + ")");
-        }
-
-        return false;
+    private void publish(List<Vocabulary> results) {
+        vocabularies = Collections.unmodifiableList(results);
+        notifyDataSetChanged();
     }
 
     /**
-     * Parses the parts of speech from the section and into the buffer
-     * @param vocabulary {@link Vocabulary Vocabulary} to add tags to
-     * @param section section to be parsed
-     * @param pos parts of speech buffer
-     * @return true if this section is archaic and should be discarded, or false otherwise
+     * Sends an HTTP GET request to retrieve the vocabularies of a query from the server
+     * @param query normalized query
+     * @param generation generation of the query
      */
-    private boolean parsePos(Vocabulary vocabulary, StringBuilder section, StringBuilder pos) {
-        Matcher m = Pattern.compile(REGEX_CODE).matcher(section);
-        while(m.find()) {
-            String match = m.group(1);
-            if (match.contains(DictionaryCodes.ARCHAISM))
-                return true;
-
-            // checks for multiple pos in the same definition
-            String[] codeDefs;
-            if (match.contains(REGEX_CODE_DEFS))
-                codeDefs = match.split(REGEX_CODE_DEFS);
-            else
-                codeDefs = new String[] {match};
-
-            boolean deleted = false;
-            for (String code : codeDefs){
-                if (codes.getCode(code)) {
-                    if (!deleted) {
-                        // only removes this part if it is a part of speech
-                        StringHelper.remove(section,"(" + match + ")");
-                        deleted = true;
-                    }
-
-                    code = codes.getCodeUsed(code);
-                    if (code != null) {
-                        vocabulary.addTag(code);
-
-                        if (pos.length() == 0)
-                            pos.append(code);
-                        else
-                            pos.append(DELIMITER_POS).append(code);
-                    }
-                }
-            }
-        }
+    private void request(String query, int generation) {
+        StreamedQuery streamed = new StreamedQuery(httpManager, query, generation);
 
-        return false;
+        // the list is still empty, so there is nothing to notify
+        vocabularies = Collections.unmodifiableList(streamed.shown);
+        httpManager.stream(CHANNEL, URL + query, streamed, streamed);
     }
 
     /**
-     * Extracts any codes from the reading, then adds it to the {@link Vocabulary vocabulary} if it is
-     * not an irregulary or outdated reading
-     * @param vocabulary {@link Vocabulary Vocabulary} to add reading to
-     * @param reading reading to be parsed
+     * Parses the response of a query line by line as it is downloaded, and caches the parsed
+     * vocabularies once the response is complete
      */
-    private void parseReading(Vocabulary vocabulary, String reading) {
-        Matcher m = Pattern.compile(REGEX_CODE).matcher(reading);
-        if (m.find()) {
-            String match = m.group(1);
-            // ignores readings with irregular or outdated
-            if (codes.getLiteralUsed(match)) {
-                reading = reading.replace("(" + match + ")", "");
-                vocabulary.addReading(reading);
-            } else if (!codes.getLiteral(match)) {
-                vocabulary.addReading(reading);
-            }
+    private class VocabularyStreamParser implements HttpManager.StreamParser<List<Vocabulary>> {
+        // receives the vocabularies parsed before the rest of the response has arrived, if any
+        EdictResponseReader.OnBatchListener onBatchListener;
+        String query;
+
+        VocabularyStreamParser(String query) {
+            this.query = query;
         }
-    }
 
-    /**
-     * Parses the readings
-     * @param vocabulary {@link Vocabulary Vocabulary} to be parsed into
-     * @param readingString String containing all the readings
-     */
-    private void parseReadings(Vocabulary vocabulary, String readingString) {
-        Matcher m = Pattern.compile(REGEX_READINGS).matcher(readingString);
-        if (m.find()) {
-            String match = m.group(1);
-            // checks if there are multiple readings
-            if (match.contains(REGEX_SET)) {
-                String[] readings = match.split(REGEX_SET);
-                for (String reading : readings) {
-                    parseReading(vocabulary, reading);
-                }
-            } else {
-                // only one reading so just add it to vocabulary
-                vocabulary.setReading(match);
-            }
+        @Override
+        public List<Vocabulary> parse(InputStream body, String charset) throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(body, charset));
+
+            // responses are parsed on several threads at once, so each gets its own tokenizer, and
+            // superseded queries are cancelled by the HttpManager, since the response may be shared
+            List<Vocabulary> results = new EdictResponseReader(getCodes()).read(reader, query,
+                    onBatchListener);
+            if (results != null)
+                cache.put(query, results);
+
+            return results;
         }
     }
 
     /**
-     * Parses the definitions and parts of speech
-     * @param vocabulary {@link Vocabulary Vocabulary} to parse into
-     * @param sections list of sections to be parsed
+     * Parses the response of a query as it is downloaded, and publishes the parsed vocabularies in
+     * batches whenever the rest of the response has yet to arrive
      */
-    private void parseSections(Vocabulary vocabulary, String[] sections) {
-        boolean pass = false; // discard irrelevant sections
-        int index = 1; // index starts at 1
-
-        StringBuilder sec;
-        StringBuilder def = new StringBuilder(CAPACITY_DEF);
-        StringBuilder pos = new StringBuilder(CAPACITY_POS);
-
-        for (String section : sections) {
-            sec = new StringBuilder(section);
-
-            if (parseNewSection(vocabulary, index, sec, def, pos)) {
-                pass = false;
-                index++;
-            }
+    private class StreamedQuery extends VocabularyStreamParser
+            implements Response.Listener<List<Vocabulary>>, EdictResponseReader.OnBatchListener {
+        private boolean complete;
+        private int generation;
+        private HttpManager httpManager;
+
+        // vocabularies published so far, only touched on the main thread
+        private List<Vocabulary> shown;
+
+        StreamedQuery(HttpManager httpManager, String query, int generation) {
+            super(query);
+            this.httpManager = httpManager;
+            this.generation = generation;
+
+            complete = false;
+            onBatchListener = this;
+            shown = new ArrayList<>();
+        }
 
-            if (parseOnly(vocabulary, sec)) {
-                pass = true;
-                continue;
-            }
+        @Override
+        public void onBatch(List<Vocabulary> batch) {
+            insert(batch);
+        }
 
-            parseEspecially(vocabulary, sec);
+        @Override
+        public void onResponse(List<Vocabulary> results) {
+            if (isSuperseded(generation))
+                return;
 
-            if (parseDomain(vocabulary, sec, pos)) {
-                pass = true;
-                continue;
+            if (results == null) {
+                statusManager.error(ERROR_RESULTS);
+                return;
             }
 
-            parseSeeAlso(sec);
-
-            if (pass)
-                continue;
-
-            if (parsePos(vocabulary, sec, pos)) {
-                pass = true;
-                continue;
+            if (complete) {
+                // a revalidated response replaces the one already shown
+                shown = results;
+                publish(results);
+            } else {
+                // every batch posted before the result has already been shown
+                complete = true;
+                append(results.subList(shown.size(), results.size()));
             }
 
-            parseDefinition(sec, def);
+            statusManager.closeStatus();
         }
 
-        if (!pass) {
-            vocabulary.addDefinition(def.toString());
-            vocabulary.addPartsOfSpeech(pos.toString());
+        /**
+         * Adds vocabularies to the end of the list shown
+         * @param batch vocabularies to add
+         */
+        private void append(List<Vocabulary> batch) {
+            if (batch.isEmpty())
+                return;
+
+            int start = shown.size();
+            shown.addAll(batch);
+            notifyItemRangeInserted(start, batch.size());
         }
-    }
 
-    /**
-     * Removes the "See also" part from the section if any
-     * @param section section to be checked
-     */
-    private void parseSeeAlso(StringBuilder section) {
-        Matcher m = Pattern.compile(REGEX_SEE).matcher(section);
-        while  (m.find())
-            StringHelper.remove(section,"(" + m.group(1) + ")");
+        /**
+         * Posts a batch of vocabularies to be added to the list shown on the main thread
+         * @param batch vocabularies to add
+         */
+        private void insert(final List<Vocabulary> batch) {
+            httpManager.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (isSuperseded(generation) || complete)
+                        return;
+
+                    if (shown.isEmpty())
+                        statusManager.closeStatus();
+                    append(batch);
+                }
+            });
+        }
     }
 }
@@ -1,10 +1,14 @@
 package noracee.ankidictionary.dictionary;
 
+import android.util.LruCache;
+
+import com.android.volley.Request;
 import com.android.volley.Response;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import noracee.ankidictionary.R;
 import noracee.ankidictionary.entity.Example;
@@ -14,7 +18,8 @@ import noracee.ankidictionary.util.StatusManager;
 import noracee.ankidictionary.util.UtilProvider;
 
 /**
- * Queries the server for example sentences and parses it
+ * Queries the server for example sentences and parses it on the background thread of the
+ * {@link HttpManager HttpManager}, publishing only complete, unmodifiable example lists
  */
 
 public class ExampleParser {
@@ -25,11 +30,15 @@ public class ExampleParser {
         void onDataSetChanged();
     }
 
-    // Number of parts when an example string is split
-    private static final int COUNT_TRANSLATIONS = 3;
-    // Positions of the translations when example string is split
-    private static final int POSITION_ENGLISH = 2;
-    private static final int POSITION_JAPANESE = 0;
+    // Channel of the requests of this parser, where a new request cancels the previous one
+    private static final String CHANNEL = "examples";
+    // Channel of the requests made ahead of time, cancelled when another word is searched for,
+    // followed by the position of the query so that the queries prefetched at once do not cancel
+    // each other
+    private static final String CHANNEL_PREFETCH = "prefetch";
+
+    // Number of queries whose examples are kept in memory
+    private static final int SIZE_CACHE = 16;
 
     // Error message for when the Japanese and English translations cannot be separated
     private static final int ERROR_PARSE = R.string.anki_error_parse;
@@ -38,25 +47,64 @@ public class ExampleParser {
     // Status message to show when no examples are found
     private static final int STATUS_NO_EXAMPLES = R.string.anki_status_no_examples;
 
-    // Separates examples
-    private static final String REGEX_EXAMPLES  = "<li>";
-    // Extracts example sentences from HTML DOM
-    private static final String REGEX_RESPONSE  = "<ul>\\R([\\s\\S]+)\\R</ul>";
-    // Separates translations
-    private static final String REGEX_TRANSLATION = "\\R";
+    // Finds the example sentences in the HTML DOM
+    private static final ResponseScanner SCANNER_RESPONSE = new ResponseScanner("ul");
 
     // Query url
     private static final String URL = "http://nihongo.monash.edu/cgi-bin/wwwjdic?1ZTU";
 
+    /**
+     * Examples parsed from a response
+     */
+    private static class Result {
+        private boolean malformed;
+        private List<Example> examples;
+    }
+
+    // Parses responses on the network thread
+    private static final HttpManager.Parser<Result> PARSER = new HttpManager.Parser<Result>() {
+        @Override
+        public Result parse(byte[] body, String charset) throws IOException {
+            return extract(body, charset);
+        }
+    };
+
+    // Incremented on every query, so that results of superseded queries are dropped
+    private volatile int generation;
+    // Number of channels of the queries last prefetched
+    private int prefetched;
+
     private HttpManager httpManager;
+    // examples by query form, since the server matches the query sent as it is, kana and case alike
+    private LruCache<String, List<Example>> cache;
     private OnDataSetChangedListener onDataSetChangedListener;
     private StatusManager statusManager;
     private Vocabulary vocabulary;
 
+    public ExampleParser() {
+        cache = new LruCache<>(SIZE_CACHE);
+    }
+
+    /**
+     * Cancels the requests made ahead of time that have yet to complete
+     */
+    public void cancelPrefetch() {
+        if (httpManager != null) {
+            for (int i = 0; i < prefetched; i++)
+                httpManager.cancelAll(CHANNEL_PREFETCH + i);
+        }
+
+        prefetched = 0;
+    }
+
     /**
      * Removes the current {@link Vocabulary Vocabulary} associated to the parser
      */
     public void clear() {
+        generation++;
+        if (httpManager != null)
+            httpManager.cancelAll(CHANNEL);
+
         vocabulary = null;
         notifyDataSetChanged();
     }
@@ -73,33 +121,108 @@ public class ExampleParser {
     }
 
     /**
-     * Sends an HTTP GET request to the server to retrieve example sentences for the given word
+     * Retrieves the example sentences for a query from memory if they have been retrieved already,
+     * or sends an HTTP GET request to the server to retrieve them, without changing the examples
+     * shown nor showing any status, e.g. to import a list of words
+     * @param tag tag of the channel to request the examples on
+     * @param query query searched for
+     * @param listener listener to trigger with the examples found, or null if the response had
+     *                 none, which may be triggered again once a cached response is revalidated
+     * @param errorListener listener to trigger if the examples cannot be retrieved
+     */
+    public void lookup(Object tag, final String query,
+                       final Response.Listener<List<Example>> listener,
+                       Response.ErrorListener errorListener) {
+        final String key = KanaNormalizer.normalize(query);
+        List<Example> cached = cache.get(key);
+        if (cached != null) {
+            listener.onResponse(cached);
+            return;
+        }
+
+        httpManager.get(tag, URL + query, Request.Priority.NORMAL, PARSER,
+                new Response.Listener<Result>() {
+                    @Override
+                    public void onResponse(Result result) {
+                        if (result == null) {
+                            listener.onResponse(null);
+                            return;
+                        }
+
+                        List<Example> examples = Collections.unmodifiableList(result.examples);
+                        cache.put(key, examples);
+                        listener.onResponse(examples);
+                    }
+                }, errorListener);
+    }
+
+    /**
+     * Sends low priority HTTP GET requests to the server to retrieve the example sentences for
+     * queries ahead of time, keeping them in memory for when a vocabulary of a query is selected,
+     * and cancels the requests of the queries prefetched before that are still in flight
+     * @param queries queries the vocabularies were looked up with
+     */
+    public void prefetch(List<String> queries) {
+        if (httpManager == null)
+            return;
+
+        for (int i = 0; i < queries.size(); i++)
+            prefetch(CHANNEL_PREFETCH + i, queries.get(i));
+        for (int i = queries.size(); i < prefetched; i++)
+            httpManager.cancelAll(CHANNEL_PREFETCH + i);
+
+        prefetched = queries.size();
+    }
+
+    /**
+     * Retrieves the example sentences for the given word from memory if they have been retrieved
+     * already, or sends an HTTP GET request to the server to retrieve them
      * @param vocabulary Vocabulary to query
      */
-    public void query(Vocabulary vocabulary) {
+    public void query(final Vocabulary vocabulary) {
+        final int generation = ++this.generation;
         this.vocabulary = vocabulary;
 
-        List<Example> examples = vocabulary.getExamples();
-        if (examples != null) {
-            vocabulary.getExamples().clear();
+        final String query = vocabulary.getQuery();
+        final String key = KanaNormalizer.normalize(query);
+        List<Example> cached = cache.get(key);
+        if (cached != null) {
+            if (httpManager != null)
+                httpManager.cancelAll(CHANNEL);
+
+            vocabulary.setExamples(cached);
+            notifyDataSetChanged();
+            showStatus(cached, false);
+            return;
+        }
+
+        if (vocabulary.getExamples() != null) {
+            vocabulary.setExamples(null);
             notifyDataSetChanged();
         }
 
         if (httpManager != null) {
-            httpManager.get(URL + vocabulary.getQuery(),
-                    new Response.Listener<String>() {
-                        @Override
-                        public void onResponse(String response) {
-                            extract(response);
-                            notifyDataSetChanged();
-
-                            List<Example> examples = ExampleParser.this.vocabulary.getExamples();
-                            if (examples == null || examples.size() == 0)
-                                statusManager.status(STATUS_NO_EXAMPLES);
-                            else
-                                statusManager.closeStatus();
-                        }
-                    });
+            // joins the request made ahead of time if it is still in flight
+            httpManager.get(CHANNEL, URL + query, PARSER, new Response.Listener<Result>() {
+                @Override
+                public void onResponse(Result result) {
+                    if (isSuperseded(generation))
+                        return;
+
+                    if (result == null) {
+                        statusManager.error(ERROR_RESULTS);
+                        return;
+                    }
+
+                    List<Example> examples = Collections.unmodifiableList(result.examples);
+                    cache.put(key, examples);
+
+                    // a revalidated response replaces the cached one already shown
+                    vocabulary.setExamples(examples);
+                    notifyDataSetChanged();
+                    showStatus(examples, result.malformed);
+                }
+            });
         }
     }
 
@@ -144,15 +267,30 @@ public class ExampleParser {
     }
 
     /**
-     * Extracts the relevant result from the HTML DOM response
-     * @param response response containing the entire HTML DOM
+     * Extracts the relevant result from the raw HTML DOM response, decoding only the result
+     * @param body raw response containing the entire HTML DOM
+     * @param charset charset of the response
+     * @return parsed examples, or null if there was no result to parse
+     * @throws IOException if the response cannot be decoded
      */
-    private void extract(String response) {
-        Matcher m = Pattern.compile(REGEX_RESPONSE).matcher(response);
-        if (m.find())
-            parse(m.group(1));
-        else
-            statusManager.error(ERROR_RESULTS);
+    private static Result extract(byte[] body, String charset) throws IOException {
+        String response = SCANNER_RESPONSE.extract(body, charset);
+        if (response == null)
+            return null;
+
+        Result result = new Result();
+        result.examples = new ArrayList<>();
+        result.malformed = ExampleTokenizer.parse(response, result.examples);
+        return result;
+    }
+
+    /**
+     * Checks whether another vocabulary has been queried, or the examples have been cleared
+     * @param generation generation of the query
+     * @return true if the results of the query must be dropped
+     */
+    private boolean isSuperseded(int generation) {
+        return generation != this.generation;
     }
 
     /**
@@ -164,29 +302,39 @@ public class ExampleParser {
     }
 
     /**
-     * Separates the example sentences
-     * @param result result extracted from the HTML DOM
+     * Sends a low priority HTTP GET request to the server to retrieve the example sentences for a
+     * query ahead of time, unless they are in memory already
+     * @param tag tag of the channel to request the examples on
+     * @param query query searched for
      */
-    private void parse(String result) {
-        String[] examples = result.split(REGEX_EXAMPLES);
-        for(String example : examples) {
-            if (example.length() > 0)
-                parseExample(example.trim());
+    private void prefetch(Object tag, String query) {
+        final String key = KanaNormalizer.normalize(query);
+        if (cache.get(key) != null) {
+            httpManager.cancelAll(tag);
+            return;
         }
+
+        httpManager.get(tag, URL + query, Request.Priority.LOW, PARSER,
+                new Response.Listener<Result>() {
+                    @Override
+                    public void onResponse(Result result) {
+                        if (result != null)
+                            cache.put(key, Collections.unmodifiableList(result.examples));
+                    }
+                });
     }
 
     /**
-     * Parses an example sentence into an {@link Example Example}
-     * @param exampleString example sentence as a string
+     * Shows the status for the examples found
+     * @param examples examples found
+     * @param malformed whether some examples could not be parsed
      */
-    private void parseExample(String exampleString) {
-        // splits Japanese from English translation
-        String[] translations = exampleString.split(REGEX_TRANSLATION);
-        if (translations.length == COUNT_TRANSLATIONS) {
-            Example example = new Example(translations[POSITION_JAPANESE], translations[POSITION_ENGLISH]);
-            vocabulary.addExample(example);
-        } else {
+    private void showStatus(List<Example> examples, boolean malformed) {
+        if (malformed)
             statusManager.error(ERROR_PARSE);
-        }
+        else if (examples.isEmpty())
+            statusManager.status(STATUS_NO_EXAMPLES);
+        else
+            statusManager.closeStatus();
     }
 }
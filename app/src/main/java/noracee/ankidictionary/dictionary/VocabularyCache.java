@@ -0,0 +1,108 @@
+package noracee.ankidictionary.dictionary;
+
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import noracee.ankidictionary.entity.Vocabulary;
+
+/**
+ * Keeps the most recently parsed results of dictionary queries in memory, bounded by the estimated
+ * number of bytes they take up rather than by the number of queries. Results are copied in and out
+ * of the cache, so vocabularies edited before being added to Anki never change a cached result.
+ * Results are keyed by {@link KanaNormalizer#key(String) KanaNormalizer}, so that a word typed in
+ * katakana, hiragana or half-width katakana is only looked up once
+ */
+
+class VocabularyCache {
+    // Estimated bytes taken by an object and its references, regardless of its contents
+    private static final int SIZE_OBJECT = 16;
+    // Estimated bytes taken by a vocabulary besides its strings
+    private static final int SIZE_VOCABULARY = 96;
+
+    private LruCache<String, List<Vocabulary>> cache;
+
+    /**
+     * @param maxSize maximum estimated number of bytes of the results kept
+     */
+    VocabularyCache(int maxSize) {
+        cache = new LruCache<String, List<Vocabulary>>(maxSize) {
+            @Override
+            protected int sizeOf(String key, List<Vocabulary> vocabularies) {
+                int size = estimate(key) + SIZE_OBJECT;
+                for (Vocabulary vocabulary : vocabularies)
+                    size += estimate(vocabulary);
+
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Retrieves a copy of the cached result of a query, counting as a hit or a miss
+     * @param query normalized query
+     * @return copies of the vocabularies found for the query, or null if the query is not cached
+     */
+    List<Vocabulary> get(String query) {
+        List<Vocabulary> vocabularies = cache.get(KanaNormalizer.key(query));
+        if (vocabularies == null)
+            return null;
+
+        return copy(vocabularies);
+    }
+
+    /**
+     * Caches a copy of the result of a query
+     * @param query normalized query
+     * @param vocabularies vocabularies found for the query
+     */
+    void put(String query, List<Vocabulary> vocabularies) {
+        cache.put(KanaNormalizer.key(query), copy(vocabularies));
+    }
+
+    /**
+     * Retrieves the number of queries answered from the cache
+     * @return number of hits
+     */
+    int hitCount() {
+        return cache.hitCount();
+    }
+
+    /**
+     * Retrieves the number of queries that were not in the cache
+     * @return number of misses
+     */
+    int missCount() {
+        return cache.missCount();
+    }
+
+    /**
+     * Retrieves the estimated number of bytes of the results kept
+     * @return estimated size in bytes
+     */
+    int size() {
+        return cache.size();
+    }
+
+    private static List<Vocabulary> copy(List<Vocabulary> vocabularies) {
+        List<Vocabulary> copies = new ArrayList<>(vocabularies.size());
+        for (Vocabulary vocabulary : vocabularies)
+            copies.add(new Vocabulary(vocabulary));
+
+        return copies;
+    }
+
+    private static int estimate(String s) {
+        return s == null ? 0 : SIZE_OBJECT + s.length() * 2;
+    }
+
+    /**
+     * Estimates the bytes taken by a parsed vocabulary from the strings it holds
+     */
+    private static int estimate(Vocabulary vocabulary) {
+        return SIZE_VOCABULARY + estimate(vocabulary.getRaw()) + estimate(vocabulary.getKanji())
+                + estimate(vocabulary.getReading()) + estimate(vocabulary.getDefinitions())
+                + estimate(vocabulary.getPartsOfSpeech()) + estimate(vocabulary.getTagsString());
+    }
+}
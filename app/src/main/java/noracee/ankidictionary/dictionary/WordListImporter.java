@@ -0,0 +1,533 @@
+package noracee.ankidictionary.dictionary;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+import noracee.ankidictionary.R;
+import noracee.ankidictionary.entity.Example;
+import noracee.ankidictionary.entity.Vocabulary;
+import noracee.ankidictionary.util.AnkiManager;
+import noracee.ankidictionary.util.HttpManager;
+import noracee.ankidictionary.util.StatusManager;
+import noracee.ankidictionary.util.UtilProvider;
+
+/**
+ * Imports a list of words into Anki, looking up the vocabularies and examples of a few words at a
+ * time, picking the vocabulary and example matching each word best and adding them as notes, which
+ * Anki receives in batches. The words left to import are kept in files, so that an import that was
+ * interrupted is resumed where it left off. Only used on the main thread
+ */
+
+public class WordListImporter {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int ERROR_CATEGORY   = R.string.anki_error_category;
+    private static final int ERROR_IMPORT     = R.string.import_error;
+    private static final int STATUS_IMPORTED  = R.string.import_status_imported;
+    private static final int STATUS_IMPORTING = R.string.import_status_importing;
+
+    /// Pace of the lookups, which mostly go to the same server
+    // Number of words looked up at once
+    private static final int SIZE_CONCURRENT = 3;
+    // Milliseconds between the starts of two lookups
+    private static final long INTERVAL_LOOKUP = 500;
+
+    // Bytes of results cached, which only serves revalidated responses since each word is looked
+    // up once
+    private static final int SIZE_CACHE = 256 * 1024;
+
+    /// Files in the app's files directory keeping the progress of an import
+    // Words to import, one per line
+    private static final String FILE_WORDS = "import_words.txt";
+    // Positions of the words that no longer need to be looked up, one per line
+    private static final String FILE_DONE  = "import_done.txt";
+
+    // Separates the writings of a vocabulary
+    private static final String DELIMITER = "::";
+    // Separates the columns of a line in a CSV or tab separated list
+    private static final String REGEX_COLUMNS = "[,\t]";
+    // Byte order mark some editors start a UTF-8 file with
+    private static final String BOM = "\uFEFF";
+
+    /**
+     * Outcome of looking up a word
+     */
+    private enum Outcome {
+        ADDED, SKIPPED, FAILED
+    }
+
+    private boolean running;
+    private boolean scheduled;
+    private int added;
+    private int done;
+    private int failed;
+    private long started;
+
+    // Incremented on every import started, so that notes of a replaced import are not recorded
+    private int generation;
+    // Notes queued in Anki that are not yet safe, so the progress is kept until they are
+    private int unwritten;
+
+    private AnkiManager ankiManager;
+    private DictionaryParser dictionaryParser;
+    private ExampleParser exampleParser;
+    private File doneFile;
+    private File wordsFile;
+    private Handler handler;
+    private HttpManager httpManager;
+    private List<Lookup> lookups;
+    private List<String> words;
+    private Queue<Integer> pending;
+    private Runnable next;
+    private StatusManager statusManager;
+
+    public WordListImporter(Context context) throws IOException {
+        dictionaryParser = new DictionaryParser(context, SIZE_CACHE);
+        exampleParser = new ExampleParser();
+
+        doneFile = new File(context.getFilesDir(), FILE_DONE);
+        wordsFile = new File(context.getFilesDir(), FILE_WORDS);
+
+        handler = new Handler(Looper.getMainLooper());
+        lookups = new ArrayList<>();
+        pending = new LinkedList<>();
+        words = new ArrayList<>();
+        next = new Runnable() {
+            @Override
+            public void run() {
+                scheduled = false;
+                if (!running)
+                    return;
+
+                started = SystemClock.uptimeMillis();
+                start(pending.remove());
+                schedule();
+            }
+        };
+    }
+
+    /**
+     * Checks whether an import was interrupted before all of its words were looked up
+     * @return true if there is an import to resume
+     */
+    public boolean hasProgress() {
+        return wordsFile.exists();
+    }
+
+    /**
+     * Checks whether words are being imported
+     * @return true if an import is running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Resumes the import that was interrupted, looking up only the words left
+     */
+    public void resume() {
+        if (running)
+            return;
+
+        if (ankiManager.getCategory() == null) {
+            statusManager.error(ERROR_CATEGORY);
+            return;
+        }
+
+        Set<Integer> skipped = new HashSet<>();
+        try {
+            words = readLines(wordsFile);
+            for (String position : readLines(doneFile))
+                skipped.add(Integer.valueOf(position));
+        } catch (IOException | NumberFormatException e) {
+            e.printStackTrace();
+            statusManager.error(ERROR_IMPORT, null, words.size());
+            return;
+        }
+
+        pending.clear();
+        for (int i = 0; i < words.size(); i++) {
+            if (!skipped.contains(i))
+                pending.add(i);
+        }
+
+        added = 0;
+        done = words.size() - pending.size();
+        failed = 0;
+        running = true;
+
+        showProgress();
+        schedule();
+    }
+
+    /**
+     * Sets the managers for this importer and its parsers
+     * @param utilProvider provider for the managers
+     */
+    public void setUtilProvider(UtilProvider utilProvider) {
+        ankiManager = utilProvider.getAnkiManager();
+        httpManager = utilProvider.getHttpManager();
+        statusManager = utilProvider.getStatusManager();
+
+        dictionaryParser.setUtilProvider(utilProvider);
+        exampleParser.setUtilProvider(utilProvider);
+    }
+
+    /**
+     * Removes the managers for this importer and its parsers on Activity recreation
+     */
+    public void removeUtilProvider() {
+        ankiManager = null;
+        httpManager = null;
+        statusManager = null;
+
+        dictionaryParser.removeUtilProvider();
+        exampleParser.removeUtilProvider();
+    }
+
+    /**
+     * Starts importing a list of words, replacing any import that was interrupted
+     * @param list text list with a word on each line, or CSV or tab separated list with the word in
+     *             the first column
+     * @throws IOException if the list cannot be read
+     */
+    public void start(InputStream list) throws IOException {
+        stop();
+
+        List<String> read = new ArrayList<>();
+        BufferedReader br = new BufferedReader(new InputStreamReader(list, UTF_8));
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (read.isEmpty() && line.startsWith(BOM))
+                    line = line.substring(BOM.length());
+
+                String word = line.split(REGEX_COLUMNS, 2)[0].trim();
+                if (!word.isEmpty())
+                    read.add(word);
+            }
+        } finally {
+            br.close();
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (String word : read)
+            sb.append(word).append('\n');
+
+        generation++;
+        unwritten = 0;
+        clearProgress();
+        write(wordsFile, sb.toString(), false);
+        resume();
+    }
+
+    /**
+     * Stops the lookups in flight, leaving the words left to be imported when resumed
+     */
+    public void stop() {
+        running = false;
+        scheduled = false;
+        handler.removeCallbacks(next);
+
+        for (Lookup lookup : lookups)
+            httpManager.cancelAll(lookup);
+        lookups.clear();
+    }
+
+    /**
+     * Removes the files keeping the progress of an import
+     */
+    private void clearProgress() {
+        if (doneFile.exists() && !doneFile.delete())
+            doneFile.deleteOnExit();
+        if (wordsFile.exists() && !wordsFile.delete())
+            wordsFile.deleteOnExit();
+    }
+
+    /**
+     * Finishes the import once every word has been looked up, keeping the words that failed to be
+     * retried when resumed
+     */
+    private void complete() {
+        running = false;
+        ankiManager.flush();
+
+        if (failed > 0) {
+            statusManager.error(ERROR_IMPORT, null, failed);
+        } else {
+            // otherwise cleared once the last note is safe
+            if (unwritten == 0)
+                clearProgress();
+            statusManager.notice(STATUS_IMPORTED, null, added);
+        }
+    }
+
+    /**
+     * Records the outcome of looking up a word and looks up the next one
+     * @param lookup lookup of the word
+     * @param outcome outcome of the lookup
+     */
+    private void finish(Lookup lookup, Outcome outcome) {
+        if (lookup.finished || !lookups.remove(lookup))
+            return;
+
+        lookup.finished = true;
+
+        // stops a cached response from being revalidated
+        httpManager.cancelAll(lookup);
+
+        // an added word is only recorded as done once its note is safe, in onWritten()
+        if (outcome == Outcome.FAILED)
+            failed++;
+        else if (outcome == Outcome.ADDED)
+            added++;
+        else
+            recordDone(lookup.position);
+
+        done++;
+        showProgress();
+        schedule();
+    }
+
+    /**
+     * Records a word as done once its note is written to Anki or kept in the outbox, and clears the
+     * progress once the last note of a complete import is safe
+     * @param generation generation of the import the word belongs to
+     * @param position position of the word in the list
+     */
+    private void onWritten(int generation, int position) {
+        if (generation != this.generation)
+            return;
+
+        unwritten--;
+        recordDone(position);
+
+        if (!running && unwritten == 0 && failed == 0 && pending.isEmpty())
+            clearProgress();
+    }
+
+    /**
+     * Picks the example to add with a vocabulary, preferring one that uses the word imported
+     * @param word word imported
+     * @param examples examples found for the word
+     * @return position of the example, or -1 if there are none
+     */
+    private static int pickExample(String word, List<Example> examples) {
+        if (examples == null || examples.isEmpty())
+            return -1;
+
+        for (int i = 0; i < examples.size(); i++) {
+            if (examples.get(i).getJapanese().contains(word))
+                return i;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Picks the vocabulary to add for a word, preferring one written or read exactly as the word
+     * @param word word imported
+     * @param vocabularies vocabularies found for the word
+     * @return vocabulary to add
+     */
+    private static Vocabulary pickVocabulary(String word, List<Vocabulary> vocabularies) {
+        for (Vocabulary vocabulary : vocabularies) {
+            if (isWrittenAs(word, vocabulary.getKanji())
+                    || isWrittenAs(word, vocabulary.getReading()))
+                return vocabulary;
+        }
+
+        return vocabularies.get(0);
+    }
+
+    private static boolean isWrittenAs(String word, String writings) {
+        if (writings == null)
+            return false;
+
+        for (String writing : writings.split(DELIMITER)) {
+            if (writing.equals(word))
+                return true;
+        }
+
+        return false;
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<>();
+
+        BufferedReader br;
+        try {
+            br = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+        } catch (FileNotFoundException e) {
+            return lines;
+        }
+
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (!line.isEmpty())
+                    lines.add(line);
+            }
+        } finally {
+            br.close();
+        }
+
+        return lines;
+    }
+
+    /**
+     * Records a word as no longer needing to be looked up
+     * @param position position of the word in the list
+     */
+    private void recordDone(int position) {
+        try {
+            write(doneFile, position + "\n", true);
+        } catch (IOException e) {
+            // the word is looked up again when resumed
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Looks up the next word once a lookup may start, without exceeding the number of lookups at
+     * once nor starting them too close to each other
+     */
+    private void schedule() {
+        if (!running || scheduled)
+            return;
+
+        if (pending.isEmpty()) {
+            if (lookups.isEmpty())
+                complete();
+            return;
+        }
+
+        if (lookups.size() >= SIZE_CONCURRENT)
+            return;
+
+        scheduled = true;
+        long delay = Math.max(0, started + INTERVAL_LOOKUP - SystemClock.uptimeMillis());
+        handler.postDelayed(next, delay);
+    }
+
+    /**
+     * Shows how many words have been looked up
+     */
+    private void showProgress() {
+        statusManager.status(STATUS_IMPORTING, null, done + " / " + words.size());
+    }
+
+    /**
+     * Looks up the vocabularies and examples of a word
+     * @param position position of the word in the list
+     */
+    private void start(int position) {
+        Lookup lookup = new Lookup(position, words.get(position));
+        lookups.add(lookup);
+        dictionaryParser.lookup(lookup, lookup.word, lookup.vocabulariesListener, lookup);
+    }
+
+    private static void write(File file, String text, boolean append) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file, append), UTF_8);
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Lookup of a word, which also serves as the tag of the channel its requests are made on.
+     * Listeners are only triggered for the first response, since cached responses may be
+     * delivered again once revalidated
+     */
+    private class Lookup implements Response.ErrorListener {
+        private boolean finished;
+        private int position;
+        private String word;
+        private Vocabulary vocabulary;
+
+        private Response.Listener<List<Vocabulary>> vocabulariesListener =
+                new Response.Listener<List<Vocabulary>>() {
+                    @Override
+                    public void onResponse(List<Vocabulary> vocabularies) {
+                        if (finished || vocabulary != null)
+                            return;
+
+                        if (vocabularies == null || vocabularies.isEmpty()) {
+                            finish(Lookup.this, Outcome.SKIPPED);
+                            return;
+                        }
+
+                        vocabulary = pickVocabulary(word, vocabularies);
+                        if (ankiManager.isAdded(vocabulary)) {
+                            finish(Lookup.this, Outcome.SKIPPED);
+                            return;
+                        }
+
+                        exampleParser.lookup(Lookup.this, vocabulary.getQuery(), examplesListener,
+                                Lookup.this);
+                    }
+                };
+
+        private Response.Listener<List<Example>> examplesListener =
+                new Response.Listener<List<Example>>() {
+                    @Override
+                    public void onResponse(List<Example> examples) {
+                        if (finished)
+                            return;
+
+                        vocabulary.setExamples(examples);
+                        int example = pickExample(word, examples);
+                        if (example != -1)
+                            vocabulary.setExample(example);
+
+                        vocabulary.setCategory(ankiManager.getCategory());
+                        unwritten++;
+                        ankiManager.add(vocabulary, new Runnable() {
+                            private int generation = WordListImporter.this.generation;
+
+                            @Override
+                            public void run() {
+                                onWritten(generation, position);
+                            }
+                        });
+                        finish(Lookup.this, Outcome.ADDED);
+                    }
+                };
+
+        Lookup(int position, String word) {
+            this.position = position;
+            this.word = word;
+        }
+
+        @Override
+        public void onErrorResponse(VolleyError error) {
+            error.printStackTrace();
+            finish(this, Outcome.FAILED);
+        }
+    }
+}
@@ -3,26 +3,78 @@ package noracee.ankidictionary.util;
 import android.app.Activity;
 import android.content.Context;
 import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.app.ActivityCompat;
 
+import com.ichi2.anki.FlashCardsContract;
 import com.ichi2.anki.api.AddContentApi;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import noracee.ankidictionary.R;
 import noracee.ankidictionary.entity.Vocabulary;
 
 /**
- * Provides interaction with Anki
+ * Provides interaction with Anki. Notes are written on a background thread in batches, once enough
+ * notes are pending or the oldest pending note has waited long enough, so that adding a note never
+ * waits on Anki. Notes that cannot be written, because Anki is unavailable or the write failed, are
+ * kept in an outbox file and written all at once as soon as Anki is available again. The first
+ * field of every note of the model is kept in memory, so that vocabularies already in Anki can be
+ * checked without querying Anki
  */
 
 public class AnkiManager {
+    /**
+     * Listener to listen for when notes are added to Anki or loaded from it
+     */
+    public interface OnNotesChangedListener {
+        void onNotesChanged();
+    }
+
     // Code used to request permission for Anki
     public static final int CODE_PERMISSION = 0;
 
+    private static final int ERROR_ADD        = R.string.anki_error_add;
     private static final int ERROR_DECK       = R.string.anki_error_deck;
     private static final int ERROR_MODEL      = R.string.anki_error_model;
     private static final int ERROR_PERMISSION = R.string.anki_error_permission;
+    private static final int STATUS_ADDED     = R.string.anki_status_added;
+    private static final int STATUS_KEPT      = R.string.anki_status_kept;
+
+    /// Batching of the notes written to Anki
+    // Number of pending notes that are written at once
+    private static final int SIZE_BATCH = 10;
+    // Milliseconds a pending note waits for others before being written
+    private static final long DELAY_BATCH = 2000;
+
+    // Thread writing notes, shared by all instances so that notes are written in order
+    private static final ScheduledExecutorService WRITER =
+            Executors.newSingleThreadScheduledExecutor();
+
+    // File in the app's files directory keeping the notes not yet written to Anki
+    private static final String FILE_OUTBOX = "outbox.jsonl";
+
+    // Separator of the fields of a note as stored by Anki
+    private static final char SEPARATOR_FIELDS = '\u001f';
+
+    // Columns queried when loading the notes of the model
+    private static final String[] PROJECTION_NOTES = {FlashCardsContract.Note.FLDS};
+    // Anki search for the notes of a model, followed by the model id
+    private static final String SEARCH_MODEL = "mid:";
 
     private static final String DECK_KANJI  = "漢字";
     private static final String MODEL_KANJI = "漢字";
@@ -33,16 +85,28 @@ public class AnkiManager {
     // Required permission to use Anki
     private static final String PERMISSION = com.ichi2.anki.api.AddContentApi.READ_WRITE_PERMISSION;
 
-    private long deckKanji;
-    private long modelKanji;
+    private volatile long deckKanji;
+    private volatile long modelKanji;
 
     private String category;
 
-    private AddContentApi api;
+    private volatile AddContentApi api;
     private Context context;
+    private Handler handler;
+    private OnNotesChangedListener onNotesChangedListener;
     private SharedPreferencesManager sharedPreferencesManager;
     private StatusManager statusManager;
 
+    // first fields of the notes of the model, added to on the main thread and loaded on the writer
+    private Set<String> notes;
+
+    // notes waiting to be written, only touched on the writer thread
+    private NoteOutbox outbox;
+    private List<Runnable> pendingCallbacks;
+    private List<String[]> pendingFields;
+    private List<Set<String>> pendingTags;
+    private ScheduledFuture<?> scheduledWrite;
+
     public AnkiManager(Activity context, SharedPreferencesManager sharedPreferencesManager,
                        StatusManager statusManager) {
         this.context = context;
@@ -50,19 +114,84 @@ public class AnkiManager {
         this.statusManager = statusManager;
 
         api = null;
+        deckKanji = -1;
+        modelKanji = -1;
+        handler = new Handler(Looper.getMainLooper());
+        notes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        outbox = new NoteOutbox(new File(context.getFilesDir(), FILE_OUTBOX));
+        pendingCallbacks = new ArrayList<>();
+        pendingFields = new ArrayList<>();
+        pendingTags = new ArrayList<>();
+
         initCategory();
         getPermission(context);
     }
 
 
     /**
-     * Adds a vocabulary to Anki only if permissions are granted
+     * Queues a vocabulary to be added to Anki, which is written along with the other pending notes
+     * in the background, or kept in the outbox until Anki is available
      * @param vocabulary {@link Vocabulary Vocabulary}
      */
     public void add(Vocabulary vocabulary) {
+        add(vocabulary, null);
+    }
+
+    /**
+     * Queues a vocabulary to be added to Anki as with {@link #add(Vocabulary)}, and runs a callback
+     * once its note is safe, either written to Anki or kept in the outbox
+     * @param vocabulary {@link Vocabulary Vocabulary}
+     * @param onWritten callback to run on the main thread once the note is safe, or null
+     */
+    public void add(Vocabulary vocabulary, final Runnable onWritten) {
         setCategory(vocabulary.getCategory());
-        if (api != null)
-            api.addNote(modelKanji, deckKanji, vocabulary.getFields(), vocabulary.getTags());
+
+        // the fields and tags are copies, since the vocabulary can still be edited
+        final String[] fields = vocabulary.getFields();
+        final Set<String> tags = vocabulary.getTags();
+        notes.add(fields[0]);
+        notifyNotesChanged();
+
+        WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!isAvailable()) {
+                    List<String[]> keptFields = new ArrayList<>(1);
+                    List<Set<String>> keptTags = new ArrayList<>(1);
+                    keptFields.add(fields);
+                    keptTags.add(tags);
+                    if (keep(keptFields, keptTags))
+                        confirm(Collections.singletonList(onWritten));
+                    return;
+                }
+
+                pendingCallbacks.add(onWritten);
+                pendingFields.add(fields);
+                pendingTags.add(tags);
+
+                if (pendingFields.size() >= SIZE_BATCH)
+                    writePending();
+                else if (scheduledWrite == null)
+                    scheduledWrite = WRITER.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            writePending();
+                        }
+                    }, DELAY_BATCH, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    /**
+     * Writes all pending notes to Anki without waiting for the batch to fill up
+     */
+    public void flush() {
+        WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                writePending();
+            }
+        });
     }
 
     /**
@@ -73,6 +202,16 @@ public class AnkiManager {
         return category;
     }
 
+    /**
+     * Checks whether a vocabulary has already been added to Anki, without querying Anki
+     * @param vocabulary {@link Vocabulary Vocabulary}
+     * @return true if a note of the model has the kanji writing of the vocabulary as first field
+     */
+    public boolean isAdded(Vocabulary vocabulary) {
+        String kanji = vocabulary.getKanji();
+        return kanji != null && notes.contains(kanji);
+    }
+
     /**
      * Checks permission results and initializes this manager if permission was granted
      * @param grantResults results from the permission request
@@ -84,6 +223,120 @@ public class AnkiManager {
             statusManager.error(ERROR_PERMISSION);
     }
 
+    /**
+     * Writes all the notes kept in the outbox to Anki in a single call, on the writer thread. The
+     * outbox is left as it is if Anki is still unavailable
+     */
+    private void flushOutbox() {
+        if (!isAvailable())
+            return;
+
+        int count;
+        try {
+            count = outbox.read();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        if (count == 0)
+            return;
+
+        List<String[]> failedFields = new ArrayList<>();
+        List<Set<String>> failedTags = new ArrayList<>();
+        int added;
+        try {
+            added = write(outbox.getFields(), outbox.getTags(), failedFields, failedTags);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        // nothing was written, so the notes are tried again the next time Anki is available
+        if (added == 0)
+            return;
+
+        // the notes not added are kept for the next time Anki is available
+        try {
+            outbox.replace(failedFields, failedTags);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        report(added, failedFields.size());
+    }
+
+    /**
+     * Runs the callbacks of notes that are safe on the main thread
+     * @param callbacks callback of each note, which may be null
+     */
+    private void confirm(final List<Runnable> callbacks) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Runnable callback : callbacks) {
+                    if (callback != null)
+                        callback.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Retrieves the number of notes with a first field
+     * @param counts number of notes with each first field
+     * @param first first field
+     * @return number of notes, which is 0 if there are none
+     */
+    private static int count(Map<String, Integer> counts, String first) {
+        Integer count = counts.get(first);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Finds the notes of a batch that Anki only partly added, by counting the notes of the model
+     * with each first field before and after the write, so that a note whose first field was
+     * already in Anki, such as a homograph, is only added if the count of its first field grew. If
+     * the notes cannot be read again, every note of the batch is kept, which is only the case if
+     * Anki became unavailable right after the write
+     * @param fields fields of each note of the batch
+     * @param tags tags of each note of the batch
+     * @param before number of notes with each first field before the write
+     * @param failedFields list to add the fields of each note not added to
+     * @param failedTags list to add the tags of each note not added to
+     */
+    private void findFailed(List<String[]> fields, List<Set<String>> tags,
+                            Map<String, Integer> before, List<String[]> failedFields,
+                            List<Set<String>> failedTags) {
+        Map<String, Integer> after = readNotes();
+        for (int i = 0; i < fields.size(); i++) {
+            String first = fields.get(i)[0];
+            int added = after == null ? 0 : count(after, first) - count(before, first);
+            if (added > 0) {
+                // notes of the batch sharing a first field take the notes added in turn
+                after.put(first, after.get(first) - 1);
+            } else {
+                failedFields.add(fields.get(i));
+                failedTags.add(tags.get(i));
+            }
+        }
+    }
+
+    /**
+     * Sets the listener to listen for when notes are added or loaded
+     * @param listener listener to notify on the main thread
+     */
+    public void setOnNotesChangedListener(OnNotesChangedListener listener) {
+        onNotesChangedListener = listener;
+    }
+
+    /**
+     * Removes the listener for when notes are added or loaded
+     */
+    public void removeOnNotesChangedListener() {
+        onNotesChangedListener = null;
+    }
+
     /**
      * Requests relevant permissions to use Anki API
      * @param context context of the app
@@ -99,6 +352,15 @@ public class AnkiManager {
         api = new AddContentApi(context.getApplicationContext());
         initDeck();
         initModel();
+
+        // notes kept while Anki was unavailable, including on a previous run of the app
+        WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                flushOutbox();
+                loadNotes();
+            }
+        });
     }
 
     /**
@@ -143,6 +405,107 @@ public class AnkiManager {
             statusManager.error(ERROR_MODEL, null, MODEL_KANJI);
     }
 
+    /**
+     * Checks whether notes can be written to Anki
+     * @return true if Anki is initialized and has the deck and model used
+     */
+    private boolean isAvailable() {
+        return api != null && deckKanji != -1 && modelKanji != -1;
+    }
+
+    /**
+     * Keeps notes in the outbox until Anki is available, on the writer thread
+     * @param fields fields of each note
+     * @param tags tags of each note
+     * @return true if the notes were kept, or false if they could not be written to the outbox
+     */
+    private boolean keep(List<String[]> fields, List<Set<String>> tags) {
+        final int count = fields.size();
+        try {
+            outbox.append(fields, tags);
+        } catch (IOException e) {
+            e.printStackTrace();
+            report(0, count);
+            return false;
+        }
+
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                statusManager.notice(STATUS_KEPT, null, count);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Loads the first field of every note of the model from Anki in a single query, on the writer
+     * thread
+     */
+    private void loadNotes() {
+        Map<String, Integer> loaded = readNotes();
+        if (loaded == null)
+            return;
+
+        notes.addAll(loaded.keySet());
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                notifyNotesChanged();
+            }
+        });
+    }
+
+    /**
+     * Notifies the listener that notes were added or loaded, on the main thread
+     */
+    private void notifyNotesChanged() {
+        if (onNotesChangedListener != null)
+            onNotesChangedListener.onNotesChanged();
+    }
+
+    /**
+     * Reads the first field of every note of the model from Anki in a single query
+     * @return number of notes with each first field, or null if they cannot be read
+     */
+    private Map<String, Integer> readNotes() {
+        if (modelKanji == -1)
+            return null;
+
+        // the notes provider takes an Anki search rather than an SQL selection
+        String selection = SEARCH_MODEL + modelKanji;
+        Cursor cursor;
+        try {
+            cursor = context.getApplicationContext().getContentResolver().query(
+                    FlashCardsContract.Note.CONTENT_URI, PROJECTION_NOTES, selection, null, null);
+        } catch (RuntimeException e) {
+            // Anki may have been uninstalled or have revoked the permission since
+            e.printStackTrace();
+            return null;
+        }
+
+        if (cursor == null)
+            return null;
+
+        Map<String, Integer> read = new HashMap<>(cursor.getCount());
+        try {
+            int column = cursor.getColumnIndexOrThrow(FlashCardsContract.Note.FLDS);
+            while (cursor.moveToNext()) {
+                String fields = cursor.getString(column);
+                if (fields == null)
+                    continue;
+
+                int end = fields.indexOf(SEPARATOR_FIELDS);
+                String first = end == -1 ? fields : fields.substring(0, end);
+                read.put(first, count(read, first) + 1);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return read;
+    }
+
     /**
      * Sets the current category to be used when adding Anki notes
      * @param category category
@@ -151,4 +514,121 @@ public class AnkiManager {
         this.category = category;
         sharedPreferencesManager.write(KEY_CATEGORY, category);
     }
+
+    /**
+     * Reports the outcome of writing a batch of notes on the main thread
+     * @param added number of notes added
+     * @param failed number of notes that could not be added
+     */
+    private void report(final int added, final int failed) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (failed > 0)
+                    statusManager.error(ERROR_ADD, null, failed);
+                else
+                    statusManager.notice(STATUS_ADDED, null, added);
+            }
+        });
+    }
+
+    /**
+     * Writes the pending notes to Anki in a single call, on the writer thread
+     */
+    private void writePending() {
+        if (scheduledWrite != null) {
+            scheduledWrite.cancel(false);
+            scheduledWrite = null;
+        }
+
+        if (pendingFields.isEmpty())
+            return;
+
+        List<Runnable> callbacks = new ArrayList<>(pendingCallbacks);
+        List<String[]> fields = new ArrayList<>(pendingFields);
+        List<Set<String>> tags = new ArrayList<>(pendingTags);
+        pendingCallbacks.clear();
+        pendingFields.clear();
+        pendingTags.clear();
+
+        if (!isAvailable()) {
+            if (keep(fields, tags))
+                confirm(callbacks);
+            return;
+        }
+
+        List<String[]> failedFields = new ArrayList<>();
+        List<Set<String>> failedTags = new ArrayList<>();
+        int added;
+        try {
+            added = write(fields, tags, failedFields, failedTags);
+        } catch (RuntimeException e) {
+            // Anki may have been uninstalled or have revoked the permission since
+            e.printStackTrace();
+            if (keep(fields, tags))
+                confirm(callbacks);
+            return;
+        }
+
+        // the notes not added are kept, and reported, until Anki takes them
+        if (failedFields.isEmpty() || keep(failedFields, failedTags))
+            confirm(callbacks);
+        report(added, failedFields.size());
+    }
+
+    /**
+     * Writes notes to Anki in a single call, on the writer thread. If the notes of the model
+     * cannot be read beforehand, which notes a partly added batch is missing could not be found
+     * afterwards, so the notes are written one at a time instead
+     * @param fields fields of each note
+     * @param tags tags of each note
+     * @param failedFields list to add the fields of each note not added to
+     * @param failedTags list to add the tags of each note not added to
+     * @return number of notes added
+     * @throws RuntimeException if Anki cannot be reached, in which case no note was added
+     */
+    private int write(List<String[]> fields, List<Set<String>> tags,
+                      List<String[]> failedFields, List<Set<String>> failedTags) {
+        Map<String, Integer> before = readNotes();
+        if (before == null)
+            return writeEach(fields, tags, failedFields, failedTags);
+
+        int added = api.addNotes(modelKanji, deckKanji, fields, tags);
+        if (added < fields.size())
+            findFailed(fields, tags, before, failedFields, failedTags);
+
+        return added;
+    }
+
+    /**
+     * Writes notes to Anki one call at a time, on the writer thread, so that each note is known to
+     * be added or not
+     * @param fields fields of each note
+     * @param tags tags of each note
+     * @param failedFields list to add the fields of each note not added to
+     * @param failedTags list to add the tags of each note not added to
+     * @return number of notes added
+     */
+    private int writeEach(List<String[]> fields, List<Set<String>> tags,
+                          List<String[]> failedFields, List<Set<String>> failedTags) {
+        int added = 0;
+        for (int i = 0; i < fields.size(); i++) {
+            Long id;
+            try {
+                id = api.addNote(modelKanji, deckKanji, fields.get(i), tags.get(i));
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                id = null;
+            }
+
+            if (id != null) {
+                added++;
+            } else {
+                failedFields.add(fields.get(i));
+                failedTags.add(tags.get(i));
+            }
+        }
+
+        return added;
+    }
 }
@@ -0,0 +1,152 @@
+package noracee.ankidictionary.util;
+
+import com.android.volley.Cache;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A GET request whose response body is parsed straight from its bytes on the network thread, and
+ * cached on disk for an app controlled duration, since the server does not send any useful cache
+ * headers. Bodies are cached compressed. Once a cached response is older than the fresh duration,
+ * it is delivered immediately and the request is sent again in the background, delivering the
+ * response a second time when it arrives
+ * @param <T> type of the parsed response
+ */
+
+class CachedRequest<T> extends Request<T> {
+    // Header marking a cached body as compressed, never sent by the server
+    private static final String HEADER_ENCODING = "X-Cache-Encoding";
+    private static final String ENCODING_GZIP = "gzip";
+
+    // Size of the buffer used to decompress cached bodies
+    private static final int SIZE_BUFFER = 4096;
+
+    private long expireDuration;
+    private long freshDuration;
+
+    private HttpManager.Parser<T> parser;
+    private Priority priority;
+    private Response.Listener<T> listener;
+
+    /**
+     * @param url url to perform request
+     * @param freshDuration milliseconds a cached response is used without revalidating it
+     * @param expireDuration milliseconds a cached response is used at all
+     * @param priority priority of the request in the queue
+     * @param parser parser run on the network thread
+     * @param listener response listener, which may be triggered twice when revalidating
+     * @param errorListener error listener
+     */
+    CachedRequest(String url, long freshDuration, long expireDuration, Priority priority,
+                  HttpManager.Parser<T> parser, Response.Listener<T> listener,
+                  Response.ErrorListener errorListener) {
+        super(Method.GET, url, errorListener);
+        this.freshDuration = freshDuration;
+        this.expireDuration = expireDuration;
+        this.priority = priority;
+        this.parser = parser;
+        this.listener = listener;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return priority;
+    }
+
+    @Override
+    public void deliverError(VolleyError error) {
+        // a failed revalidation keeps the cached response that has already been shown
+        if (!hasHadResponseDelivered())
+            super.deliverError(error);
+    }
+
+    @Override
+    protected void deliverResponse(T response) {
+        listener.onResponse(response);
+    }
+
+    @Override
+    protected Response<T> parseNetworkResponse(NetworkResponse response) {
+        try {
+            byte[] body;
+            Cache.Entry entry;
+            if (ENCODING_GZIP.equals(response.headers.get(HEADER_ENCODING))) {
+                // delivered from the cache, so the entry is already there
+                body = decompress(response.data);
+                entry = null;
+            } else {
+                body = response.data;
+                entry = createEntry(response.data, response.headers, freshDuration, expireDuration);
+            }
+
+            T parsed = parser.parse(body, HttpHeaderParser.parseCharset(response.headers));
+            return Response.success(parsed, entry);
+        } catch (IOException e) {
+            return Response.error(new VolleyError(e));
+        }
+    }
+
+    /**
+     * Creates the cache entry for a response with a compressed body, as read back by this request
+     * @param data response body
+     * @param responseHeaders response headers
+     * @param freshDuration milliseconds the entry is used without revalidating it
+     * @param expireDuration milliseconds the entry is used at all
+     * @return cache entry
+     * @throws IOException if the body cannot be compressed
+     */
+    static Cache.Entry createEntry(byte[] data, Map<String, String> responseHeaders,
+                                   long freshDuration, long expireDuration) throws IOException {
+        long now = System.currentTimeMillis();
+
+        Map<String, String> headers = new HashMap<>(responseHeaders);
+        headers.put(HEADER_ENCODING, ENCODING_GZIP);
+
+        Cache.Entry entry = new Cache.Entry();
+        entry.data = compress(data);
+        entry.responseHeaders = headers;
+        entry.serverDate = now;
+        entry.softTtl = now + freshDuration;
+        entry.ttl = now + expireDuration;
+        return entry;
+    }
+
+    private static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 4);
+        GZIPOutputStream gos = new GZIPOutputStream(bos);
+        try {
+            gos.write(data);
+        } finally {
+            gos.close();
+        }
+
+        return bos.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] data) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length * 4);
+        InputStream is = new GZIPInputStream(new ByteArrayInputStream(data));
+        try {
+            byte[] buffer = new byte[SIZE_BUFFER];
+            int read;
+            while ((read = is.read(buffer)) != -1)
+                bos.write(buffer, 0, read);
+        } finally {
+            is.close();
+        }
+
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,186 @@
+package noracee.ankidictionary.util;
+
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A request in flight for a URL, shared by every listener asking for the same URL at the same
+ * time. Listeners are grouped by the tag of the channel they were added on, and the request is
+ * only cancelled once every channel has cancelled it. A channel may have a listener of its own for
+ * errors, otherwise errors are reported to the shared error listener. The call is no longer shared
+ * once it has a first response, but it can still be cancelled until it is finished, as a cached
+ * response may be followed by its revalidation. Only used on the main thread, except for the
+ * request and connection being set from the thread performing the request
+ * @param <T> type of the parsed response
+ */
+
+class HttpCall<T> implements Response.Listener<T>, Response.ErrorListener {
+    private volatile boolean cancelled;
+
+    private volatile HttpURLConnection connection;
+    private volatile Request<T> request;
+
+    private Map<Object, List<Response.Listener<T>>> listeners;
+    private Map<Object, Response.ErrorListener> errorListeners;
+    private Map<String, HttpCall<?>> calls;
+    private Set<HttpCall<?>> active;
+    private Response.ErrorListener errorListener;
+    private String url;
+
+    /**
+     * @param url url of the request
+     * @param calls calls shared by url, which this call is removed from once it has a response
+     * @param active calls that can be cancelled, which this call is removed from once finished
+     * @param errorListener listener to report errors to unless the call has been cancelled or every
+     *                      channel has an error listener of its own
+     */
+    HttpCall(String url, Map<String, HttpCall<?>> calls, Set<HttpCall<?>> active,
+             Response.ErrorListener errorListener) {
+        this.url = url;
+        this.calls = calls;
+        this.active = active;
+        this.errorListener = errorListener;
+
+        cancelled = false;
+        listeners = new LinkedHashMap<>();
+        errorListeners = new HashMap<>();
+    }
+
+    @Override
+    public void onErrorResponse(VolleyError error) {
+        finish();
+        if (cancelled)
+            return;
+
+        // listeners may add requests while being notified
+        List<Response.ErrorListener> notified = new ArrayList<>(errorListeners.values());
+        if (errorListeners.size() < listeners.size())
+            notified.add(errorListener);
+
+        for (Response.ErrorListener listener : notified)
+            listener.onErrorResponse(error);
+    }
+
+    @Override
+    public void onResponse(T response) {
+        unshare();
+        if (cancelled)
+            return;
+
+        // listeners may add requests while being notified
+        List<Response.Listener<T>> notified = new ArrayList<>();
+        for (List<Response.Listener<T>> channel : listeners.values())
+            notified.addAll(channel);
+
+        for (Response.Listener<T> listener : notified)
+            listener.onResponse(response);
+    }
+
+    /**
+     * Adds a listener on a channel
+     * @param tag tag of the channel
+     * @param listener listener to trigger with the response
+     * @param errorListener listener to trigger with an error instead of the shared error listener,
+     *                      or null to keep the one the channel has
+     */
+    void add(Object tag, Response.Listener<T> listener, Response.ErrorListener errorListener) {
+        List<Response.Listener<T>> channel = listeners.get(tag);
+        if (channel == null) {
+            channel = new ArrayList<>(1);
+            listeners.put(tag, channel);
+        }
+
+        channel.add(listener);
+        if (errorListener != null)
+            errorListeners.put(tag, errorListener);
+    }
+
+    /**
+     * Removes the listeners of a channel, cancelling the request if no channel is left
+     * @param tag tag of the channel
+     * @return true if the request has been cancelled
+     */
+    boolean cancel(Object tag) {
+        listeners.remove(tag);
+        errorListeners.remove(tag);
+        if (!listeners.isEmpty())
+            return false;
+
+        cancelled = true;
+        unshare();
+
+        Request<T> request = this.request;
+        if (request != null)
+            request.cancel();
+
+        return true;
+    }
+
+    /**
+     * Stops sharing this call and stops it from being cancelled, once no other response can follow
+     */
+    void finish() {
+        unshare();
+        active.remove(this);
+    }
+
+    /**
+     * Retrieves the connection the response is being streamed from
+     * @return connection, or null if the response is not being streamed
+     */
+    HttpURLConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Checks whether the call has been cancelled
+     * @return true if the call has been cancelled
+     */
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Checks whether a channel is listening to this call
+     * @param tag tag of the channel
+     * @return true if the channel has a listener on this call
+     */
+    boolean isListening(Object tag) {
+        return listeners.containsKey(tag);
+    }
+
+    /**
+     * Sets the connection the response is being streamed from
+     * @param connection connection
+     */
+    void setConnection(HttpURLConnection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Sets the Volley request performing this call, cancelling it if the call already has been
+     * @param request request
+     */
+    void setRequest(Request<T> request) {
+        this.request = request;
+        if (cancelled)
+            request.cancel();
+    }
+
+    /**
+     * Stops sharing this call with new listeners once it has a response
+     */
+    private void unshare() {
+        if (calls.get(url) == this)
+            calls.remove(url);
+    }
+}
@@ -1,30 +1,163 @@
 package noracee.ankidictionary.util;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 
+import com.android.volley.Cache;
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
-import com.android.volley.toolbox.StringRequest;
-import com.android.volley.toolbox.Volley;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.DiskBasedCache;
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.android.volley.toolbox.HurlStack;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import noracee.ankidictionary.R;
 
 /**
- * Provides HTTP calls
+ * Provides HTTP calls, with responses cached on disk across app restarts, and a background thread
+ * to process their responses on. Every call is made on a channel, identified by a tag, where a new
+ * call cancels the calls still in flight for other URLs, and calls for a URL already in flight
+ * share its response instead of requesting it again
  */
 
 public class HttpManager implements Response.ErrorListener {
+    /**
+     * Work that processes a response body on a network thread
+     * @param <T> type of the result
+     */
+    public interface Parser<T> {
+        /**
+         * Processes a response body, which must not touch any views and may run on several network
+         * threads at once
+         * @param body raw response body
+         * @param charset charset of the body
+         * @return result to deliver on the main thread
+         * @throws IOException if the body cannot be decoded
+         */
+        T parse(byte[] body, String charset) throws IOException;
+    }
+
+    /**
+     * Work that processes a response body on a stream thread while it is being downloaded
+     * @param <T> type of the result
+     */
+    public interface StreamParser<T> {
+        /**
+         * Processes a response body as it arrives, which must not touch any views nor close the
+         * body, which is read to the end afterwards to be cached
+         * @param body response body, where reads block until more of the body is downloaded
+         * @param charset charset of the body
+         * @return result to deliver on the main thread
+         * @throws IOException if the body cannot be read
+         */
+        T parse(InputStream body, String charset) throws IOException;
+    }
+
+    /**
+     * Work that runs on the background thread
+     * @param <T> type of the result
+     */
+    public interface Task<T> {
+        /**
+         * Runs the work, which must not touch any views
+         * @return result to deliver on the main thread
+         */
+        T run();
+    }
+
     private static final int ERROR_REQUEST = R.string.error_request;
 
+    // Single thread shared by all instances, so that parsers reusing buffers are never run at once
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+    // Threads blocking on streamed responses, kept apart so they never hold up the executor
+    private static final ExecutorService STREAMS = Executors.newCachedThreadPool();
+
+    // Milliseconds to wait for a streamed connection or for more of its body
+    private static final int TIMEOUT_STREAM = 10000;
+
+    // Size of the buffer used to read the rest of a streamed body
+    private static final int SIZE_BUFFER = 4096;
+
+    // Name of the directory of the response cache
+    private static final String DIRECTORY_CACHE = "http";
+
+    /// Default cache policy
+    // Milliseconds a cached response is used without revalidating it
+    private static final long DURATION_FRESH  = 24L * 60 * 60 * 1000;
+    // Milliseconds a cached response is used at all
+    private static final long DURATION_EXPIRE = 30L * 24 * 60 * 60 * 1000;
+    // Maximum bytes of compressed responses kept on disk
+    private static final int SIZE_CACHE = 10 * 1024 * 1024;
+
+    private long expireDuration;
+    private long freshDuration;
+
+    private Handler handler;
+    private Map<String, HttpCall<?>> calls;
     private RequestQueue queue;
+    private Set<HttpCall<?>> active;
     private StatusManager statusManager;
 
     public HttpManager(Context context, StatusManager statusManager) {
+        this(context, statusManager, SIZE_CACHE, DURATION_FRESH, DURATION_EXPIRE);
+    }
+
+    /**
+     * @param context context of the app
+     * @param statusManager manager to report errors with
+     * @param cacheSize maximum bytes of compressed responses kept on disk
+     * @param freshDuration milliseconds a cached response is used without revalidating it
+     * @param expireDuration milliseconds a cached response is used at all
+     */
+    public HttpManager(Context context, StatusManager statusManager, int cacheSize,
+                       long freshDuration, long expireDuration) {
         this.statusManager = statusManager;
+        this.freshDuration = freshDuration;
+        this.expireDuration = expireDuration;
 
-        queue = Volley.newRequestQueue(context);
+        calls = new HashMap<>();
+        active = new HashSet<>();
+        handler = new Handler(Looper.getMainLooper());
+
+        File cacheDir = new File(context.getCacheDir(), DIRECTORY_CACHE);
+        queue = new RequestQueue(new DiskBasedCache(cacheDir, cacheSize),
+                new BasicNetwork(new HurlStack()));
+
+        // a cached response is delivered before its revalidation, so only Volley knows when a call
+        // is finished, which may be on one of its own threads
+        queue.addRequestFinishedListener(new RequestQueue.RequestFinishedListener<Object>() {
+            @Override
+            public void onRequestFinished(Request<Object> request) {
+                final HttpCall<?> call = (HttpCall<?>) request.getTag();
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        call.finish();
+                    }
+                });
+            }
+        });
+        queue.start();
     }
 
     @Override
@@ -34,12 +167,323 @@ public class HttpManager implements Response.ErrorListener {
     }
 
     /**
-     * Performs a HTTP GET request with given URL and response listener
+     * Cancels every call on a channel, unless another channel is still listening to it
+     * @param tag tag of the channel
+     */
+    public void cancelAll(Object tag) {
+        cancelAll(tag, null);
+    }
+
+    /**
+     * Runs a task on the background thread and delivers its result on the main thread
+     * @param task task to run
+     * @param listener listener to trigger with the result
+     */
+    public <T> void execute(final Task<T> task, final Response.Listener<T> listener) {
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final T result = task.run();
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onResponse(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Performs a HTTP GET request with given URL on a channel, parses the response body on a
+     * network thread and delivers the result on the main thread. A cached response is delivered
+     * straight away, and if it is no longer fresh the listener is triggered again with the
+     * response from the server
+     * @param tag tag of the channel
      * @param url url to perform request
-     * @param listener response listener to trigger when response is received
+     * @param parser parser to process the response body with
+     * @param listener response listener to trigger with the result
      */
-    public void get(String url, Response.Listener<String> listener) {
-        StringRequest request = new StringRequest(Request.Method.GET, url, listener,this);
+    public <T> void get(Object tag, String url, Parser<T> parser, Response.Listener<T> listener) {
+        get(tag, url, Request.Priority.NORMAL, parser, listener);
+    }
+
+    /**
+     * Performs a HTTP GET request as with {@link #get(Object, String, Parser, Response.Listener)},
+     * with a priority in the queue, e.g. a low priority for requests made ahead of time
+     * @param tag tag of the channel
+     * @param url url to perform request
+     * @param priority priority of the request in the queue
+     * @param parser parser to process the response body with
+     * @param listener response listener to trigger with the result
+     */
+    public <T> void get(Object tag, String url, Request.Priority priority, Parser<T> parser,
+                        Response.Listener<T> listener) {
+        get(tag, url, priority, parser, listener, null);
+    }
+
+    /**
+     * Performs a HTTP GET request as with
+     * {@link #get(Object, String, Request.Priority, Parser, Response.Listener)}, reporting errors
+     * to a listener of the channel instead of showing them
+     * @param tag tag of the channel
+     * @param url url to perform request
+     * @param priority priority of the request in the queue
+     * @param parser parser to process the response body with
+     * @param listener response listener to trigger with the result
+     * @param errorListener error listener to trigger if the request fails, or null to show errors
+     */
+    public <T> void get(Object tag, String url, Request.Priority priority, Parser<T> parser,
+                        Response.Listener<T> listener, Response.ErrorListener errorListener) {
+        HttpCall<T> call = join(tag, url, listener, errorListener);
+        if (call != null)
+            enqueue(call, url, priority, parser);
+    }
+
+    /**
+     * Runs an action on the main thread
+     * @param action action to run
+     */
+    public void post(Runnable action) {
+        handler.post(action);
+    }
+
+    /**
+     * Performs a HTTP GET request with given URL on a channel, parsing the response body on a
+     * stream thread as it is downloaded, and delivers the result on the main thread. A response
+     * that is still in the cache is parsed from the cache as with
+     * {@link #get(Object, String, Parser, Response.Listener)} instead, and a streamed response is
+     * cached once it has been read in full
+     * @param tag tag of the channel
+     * @param url url to perform request
+     * @param parser parser to process the response body with
+     * @param listener response listener to trigger with the result
+     */
+    public <T> void stream(Object tag, String url, StreamParser<T> parser,
+                           Response.Listener<T> listener) {
+        stream(tag, url, parser, listener, null);
+    }
+
+    /**
+     * Performs a HTTP GET request as with
+     * {@link #stream(Object, String, StreamParser, Response.Listener)}, reporting errors to a
+     * listener of the channel instead of showing them
+     * @param tag tag of the channel
+     * @param url url to perform request
+     * @param parser parser to process the response body with
+     * @param listener response listener to trigger with the result
+     * @param errorListener error listener to trigger if the request fails, or null to show errors
+     */
+    public <T> void stream(Object tag, final String url, final StreamParser<T> parser,
+                           Response.Listener<T> listener, Response.ErrorListener errorListener) {
+        final HttpCall<T> call = join(tag, url, listener, errorListener);
+        if (call == null)
+            return;
+
+        STREAMS.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (call.isCancelled())
+                    return;
+
+                Cache.Entry entry = queue.getCache().get(url);
+                if (entry != null && !entry.isExpired()) {
+                    enqueue(call, url, Request.Priority.NORMAL, new Parser<T>() {
+                        @Override
+                        public T parse(byte[] body, String charset) throws IOException {
+                            return parser.parse(new ByteArrayInputStream(body), charset);
+                        }
+                    });
+                    return;
+                }
+
+                try {
+                    final T result = download(call, url, parser);
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            call.onResponse(result);
+                            call.finish();
+                        }
+                    });
+                } catch (final IOException e) {
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            call.onErrorResponse(new VolleyError(e));
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancels every call on a channel that is not finished yet, except for a call that is kept
+     * @param tag tag of the channel
+     * @param kept call to keep, or null to cancel every call
+     */
+    private void cancelAll(Object tag, HttpCall<?> kept) {
+        Iterator<HttpCall<?>> iterator = active.iterator();
+        while (iterator.hasNext()) {
+            HttpCall<?> call = iterator.next();
+            if (call == kept || !call.isListening(tag) || !call.cancel(tag))
+                continue;
+
+            iterator.remove();
+
+            // closing the connection interrupts a download blocked on the network
+            final HttpURLConnection connection = call.getConnection();
+            if (connection != null) {
+                STREAMS.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        connection.disconnect();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Downloads a response body while parsing it, then caches it
+     * @param call call the response is downloaded for
+     * @param url url to perform request
+     * @param parser parser to process the response body with
+     * @return result of the parser
+     * @throws IOException if the response cannot be downloaded or parsed
+     */
+    private <T> T download(HttpCall<T> call, String url, StreamParser<T> parser)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        call.setConnection(connection);
+        try {
+            connection.setConnectTimeout(TIMEOUT_STREAM);
+            connection.setReadTimeout(TIMEOUT_STREAM);
+
+            int code = connection.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK)
+                throw new IOException("Unexpected response code " + code + " for " + url);
+
+            Map<String, String> headers = new HashMap<>();
+            for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+                if (header.getKey() != null && !header.getValue().isEmpty())
+                    headers.put(header.getKey(), header.getValue().get(0));
+            }
+
+            RecordingInputStream body = new RecordingInputStream(connection.getInputStream());
+            T result;
+            try {
+                result = parser.parse(body, HttpHeaderParser.parseCharset(headers));
+
+                // the parser may stop early, but only complete bodies are cached
+                body.drain();
+            } finally {
+                body.close();
+            }
+
+            queue.getCache().put(url, CachedRequest.createEntry(body.toByteArray(), headers,
+                    freshDuration, expireDuration));
+            return result;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Adds a Volley request performing a call to the queue
+     * @param call call to perform
+     * @param url url to perform request
+     * @param priority priority of the request in the queue
+     * @param parser parser to process the response body with
+     */
+    private <T> void enqueue(HttpCall<T> call, String url, Request.Priority priority,
+                             Parser<T> parser) {
+        CachedRequest<T> request = new CachedRequest<>(url, freshDuration, expireDuration,
+                priority, parser, call, call);
+        request.setTag(call);
+        call.setRequest(request);
         queue.add(request);
     }
+
+    /**
+     * Adds a listener to the call in flight for a URL, cancelling the other calls on the channel
+     * @param tag tag of the channel
+     * @param url url to perform request
+     * @param listener response listener to trigger with the result
+     * @param errorListener error listener to trigger if the request fails, or null to show errors
+     * @return new call to perform, or null if a call for the URL is already in flight
+     */
+    @SuppressWarnings("unchecked")
+    private <T> HttpCall<T> join(Object tag, String url, Response.Listener<T> listener,
+                                 Response.ErrorListener errorListener) {
+        HttpCall<T> call = (HttpCall<T>) calls.get(url);
+        cancelAll(tag, call);
+
+        if (call != null) {
+            call.add(tag, listener, errorListener);
+            return null;
+        }
+
+        call = new HttpCall<>(url, calls, active, this);
+        call.add(tag, listener, errorListener);
+        calls.put(url, call);
+        active.add(call);
+        return call;
+    }
+
+    /**
+     * An input stream that keeps a copy of every byte read through it
+     */
+    private static class RecordingInputStream extends FilterInputStream {
+        private ByteArrayOutputStream recorded;
+
+        RecordingInputStream(InputStream in) {
+            super(in);
+            recorded = new ByteArrayOutputStream();
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1)
+                recorded.write(b);
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0)
+                recorded.write(buffer, offset, read);
+
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(count, SIZE_BUFFER)];
+            int read = read(buffer, 0, buffer.length);
+            return read == -1 ? 0 : read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Reads the rest of the stream
+         * @throws IOException if the stream cannot be read
+         */
+        void drain() throws IOException {
+            byte[] buffer = new byte[SIZE_BUFFER];
+            while (read(buffer, 0, buffer.length) != -1);
+        }
+
+        byte[] toByteArray() {
+            return recorded.toByteArray();
+        }
+    }
 }
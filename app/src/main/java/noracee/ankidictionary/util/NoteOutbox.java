@@ -0,0 +1,202 @@
+package noracee.ankidictionary.util;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the notes that could not be written to Anki in an append-only file, one JSON object per
+ * line, until they can all be written at once. Not thread-safe, so it must only be used by the
+ * thread writing notes
+ */
+
+class NoteOutbox {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Keys of a note in the file
+    private static final String KEY_FIELDS = "fields";
+    private static final String KEY_TAGS   = "tags";
+
+    // Suffix of the file the notes are written to before replacing the outbox
+    private static final String SUFFIX_TEMPORARY = ".tmp";
+
+    private File file;
+
+    // notes read from the file, filled by read()
+    private List<String[]> fields;
+    private List<Set<String>> tags;
+
+    /**
+     * @param file file to keep the notes in
+     */
+    NoteOutbox(File file) {
+        this.file = file;
+
+        fields = new ArrayList<>();
+        tags = new ArrayList<>();
+    }
+
+    /**
+     * Appends notes to the file
+     * @param notesFields fields of each note
+     * @param notesTags tags of each note
+     * @throws IOException if the notes cannot be written
+     */
+    void append(List<String[]> notesFields, List<Set<String>> notesTags) throws IOException {
+        write(file, true, notesFields, notesTags);
+    }
+
+    /**
+     * Removes all the notes from the file, emptying it if it cannot be deleted so that no note is
+     * written twice
+     * @throws IOException if the file can neither be deleted nor emptied
+     */
+    void clear() throws IOException {
+        fields.clear();
+        tags.clear();
+
+        if (file.exists() && !file.delete())
+            new FileOutputStream(file).close();
+    }
+
+    /**
+     * Retrieves the fields of the notes read
+     * @return fields of each note
+     */
+    List<String[]> getFields() {
+        return fields;
+    }
+
+    /**
+     * Retrieves the tags of the notes read
+     * @return tags of each note
+     */
+    List<Set<String>> getTags() {
+        return tags;
+    }
+
+    /**
+     * Replaces the notes in the file, e.g. with the notes of the file that could not be written,
+     * writing them to a temporary file first so that no note is lost if writing fails
+     * @param notesFields fields of each note
+     * @param notesTags tags of each note
+     * @throws IOException if the notes cannot be written
+     */
+    void replace(List<String[]> notesFields, List<Set<String>> notesTags) throws IOException {
+        if (notesFields.isEmpty()) {
+            clear();
+            return;
+        }
+
+        File temporary = new File(file.getPath() + SUFFIX_TEMPORARY);
+        write(temporary, false, notesFields, notesTags);
+        if (!temporary.renameTo(file))
+            throw new IOException("Unable to replace " + file);
+    }
+
+    /**
+     * Reads all the notes in the file, skipping a note that was only partly written
+     * @return number of notes read
+     * @throws IOException if the file cannot be read
+     */
+    int read() throws IOException {
+        fields.clear();
+        tags.clear();
+
+        BufferedReader br;
+        try {
+            br = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+        } catch (FileNotFoundException e) {
+            return 0;
+        }
+
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isEmpty())
+                    continue;
+
+                try {
+                    JSONObject note = new JSONObject(line);
+                    JSONArray noteFields = note.getJSONArray(KEY_FIELDS);
+                    JSONArray noteTags = note.getJSONArray(KEY_TAGS);
+
+                    String[] values = new String[noteFields.length()];
+                    for (int i = 0; i < values.length; i++)
+                        values[i] = noteFields.getString(i);
+
+                    Set<String> set = new HashSet<>();
+                    for (int i = 0; i < noteTags.length(); i++)
+                        set.add(noteTags.getString(i));
+
+                    fields.add(values);
+                    tags.add(set);
+                } catch (JSONException e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            br.close();
+        }
+
+        return fields.size();
+    }
+
+    private static JSONArray toArray(String[] values) {
+        JSONArray array = new JSONArray();
+        for (String value : values)
+            array.put(value);
+
+        return array;
+    }
+
+    private static JSONArray toArray(Set<String> values) {
+        JSONArray array = new JSONArray();
+        for (String value : values)
+            array.put(value);
+
+        return array;
+    }
+
+    /**
+     * Writes notes to a file, one JSON object per line
+     * @param target file to write to
+     * @param append whether to append to the file instead of replacing it
+     */
+    private static void write(File target, boolean append, List<String[]> notesFields,
+                              List<Set<String>> notesTags) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        try {
+            for (int i = 0; i < notesFields.size(); i++) {
+                JSONObject note = new JSONObject();
+                note.put(KEY_FIELDS, toArray(notesFields.get(i)));
+                note.put(KEY_TAGS, toArray(notesTags.get(i)));
+                sb.append(note.toString()).append('\n');
+            }
+        } catch (JSONException e) {
+            throw new IOException(e.getMessage());
+        }
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(target, append), UTF_8);
+        try {
+            writer.write(sb.toString());
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -11,6 +11,13 @@ public class SharedPreferencesManager {
     //Name of the SharedPreferences file
     private static final String NAME = "AnkiDictionary";
 
+    // Whether searches are looked up while the query is typed
+    private static final String KEY_LIVE_SEARCH = "live_search";
+    // Whether romaji typed into the query is converted into kana
+    private static final String KEY_ROMAJI_INPUT = "romaji_input";
+    // Whether searches are split into the words of a sentence
+    private static final String KEY_SENTENCE_SEARCH = "sentence_search";
+
     private SharedPreferences settings;
 
     public SharedPreferencesManager(Context context) {
@@ -26,6 +33,60 @@ public class SharedPreferencesManager {
         return settings.getString(key, null);
     }
 
+    /**
+     * Determines whether or not searches are looked up while the query is typed
+     * @return true if live search is enabled, or false otherwise
+     */
+    public boolean isLiveSearch() {
+        return settings.getBoolean(KEY_LIVE_SEARCH, false);
+    }
+
+    /**
+     * Checks if searches are split into the words of a sentence
+     * @return true if sentence search is enabled, or false otherwise
+     */
+    public boolean isSentenceSearch() {
+        return settings.getBoolean(KEY_SENTENCE_SEARCH, false);
+    }
+
+    /**
+     * Enables or disables looking up searches while the query is typed
+     * @param liveSearch true to enable live search
+     */
+    public void setLiveSearch(boolean liveSearch) {
+        SharedPreferences.Editor editor = settings.edit();
+        editor.putBoolean(KEY_LIVE_SEARCH, liveSearch);
+        editor.apply();
+    }
+
+    /**
+     * Checks if romaji typed into the query is converted into kana
+     * @return true if romaji input is enabled, or false otherwise
+     */
+    public boolean isRomajiInput() {
+        return settings.getBoolean(KEY_ROMAJI_INPUT, false);
+    }
+
+    /**
+     * Enables or disables converting romaji typed into the query into kana
+     * @param romajiInput true to enable romaji input
+     */
+    public void setRomajiInput(boolean romajiInput) {
+        SharedPreferences.Editor editor = settings.edit();
+        editor.putBoolean(KEY_ROMAJI_INPUT, romajiInput);
+        editor.apply();
+    }
+
+    /**
+     * Enables or disables splitting searches into the words of a sentence
+     * @param sentenceSearch true to enable sentence search
+     */
+    public void setSentenceSearch(boolean sentenceSearch) {
+        SharedPreferences.Editor editor = settings.edit();
+        editor.putBoolean(KEY_SENTENCE_SEARCH, sentenceSearch);
+        editor.apply();
+    }
+
     /**
      * Writes a String to the SharedPreferences with given key
      * @param key key of the String that will be written
@@ -100,6 +100,17 @@ public class StatusManager {
         statusButton.setVisibility(View.VISIBLE);
     }
 
+    /**
+     * Opens status bar as a message that closes by itself
+     * @param noticeId id of the message to show
+     * @param before String, Integer, etc. to be appended before the message
+     * @param after String, Integer, etc. to be appended after the message
+     */
+    public void notice(int noticeId, Object before, Object after) {
+        status(noticeId, before, after);
+        handler.sendEmptyMessage(CMD_OPEN_TIMED);
+    }
+
     /**
      * Opens status bar as a message
      * @param statusId id of the status to show
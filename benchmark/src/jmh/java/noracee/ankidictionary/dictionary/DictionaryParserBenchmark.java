@@ -0,0 +1,78 @@
+package noracee.ankidictionary.dictionary;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import noracee.ankidictionary.entity.Vocabulary;
+
+/**
+ * Measures parsing dictionary responses as DictionaryParser does while streaming them, reading the
+ * lines of the response and tokenizing every line between the pre tags, as well as tokenizing a
+ * single entry
+ */
+
+@State(Scope.Thread)
+public class DictionaryParserBenchmark {
+    // Query the entries are parsed for
+    private static final String QUERY = "かんじ";
+
+    // Number of entries in the response
+    @Param({"10", "100", "1000"})
+    public int entries;
+
+    private int next;
+
+    private byte[] page;
+    private EdictResponseReader responseReader;
+    private EdictTokenizer tokenizer;
+    private List<String> lines;
+
+    @Setup
+    public void setUp() throws IOException {
+        DictionaryCodes codes = Fixtures.codes();
+        page = Fixtures.dictionaryPage(entries);
+        responseReader = new EdictResponseReader(codes);
+        tokenizer = new EdictTokenizer(codes);
+        lines = Fixtures.dictionaryEntries();
+        next = 0;
+    }
+
+    /**
+     * Parses a complete response
+     * @return vocabularies parsed
+     */
+    @Benchmark
+    public List<Vocabulary> parseResponse() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(page), Fixtures.UTF_8));
+
+        return responseReader.read(reader, QUERY, null);
+    }
+
+    /**
+     * Tokenizes one entry, cycling through the entries of the fixtures
+     * @return vocabulary parsed
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Vocabulary parseEntry() {
+        String line = lines.get(next);
+        next = (next + 1) % lines.size();
+
+        return tokenizer.parseLine(QUERY, line);
+    }
+}
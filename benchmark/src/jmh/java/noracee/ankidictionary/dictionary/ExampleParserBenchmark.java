@@ -0,0 +1,76 @@
+package noracee.ankidictionary.dictionary;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import noracee.ankidictionary.entity.Example;
+
+/**
+ * Measures parsing example responses as ExampleParser does, extracting the list of examples from
+ * the response bytes and splitting it into examples, as well as splitting a single example
+ */
+
+@State(Scope.Thread)
+public class ExampleParserBenchmark {
+    // Charset of the responses
+    private static final String CHARSET = "UTF-8";
+
+    // Finds the example sentences in the response, as in ExampleParser
+    private static final ResponseScanner SCANNER_RESPONSE = new ResponseScanner("ul");
+
+    // Number of examples in the response
+    @Param({"10", "100", "1000"})
+    public int entries;
+
+    private int next;
+
+    private byte[] page;
+    private List<String> items;
+
+    @Setup
+    public void setUp() throws IOException {
+        page = Fixtures.examplePage(entries);
+        items = Fixtures.exampleEntries();
+        next = 0;
+    }
+
+    /**
+     * Parses a complete response
+     * @return examples parsed
+     */
+    @Benchmark
+    public List<Example> parseResponse() throws IOException {
+        String response = SCANNER_RESPONSE.extract(page, CHARSET);
+
+        List<Example> examples = new ArrayList<>();
+        ExampleTokenizer.parse(response, examples);
+        return examples;
+    }
+
+    /**
+     * Splits one example, cycling through the examples of the fixtures
+     * @return examples parsed
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Example> parseEntry() {
+        String item = items.get(next);
+        next = (next + 1) % items.size();
+
+        List<Example> examples = new ArrayList<>(1);
+        ExampleTokenizer.parseExample(item, examples);
+        return examples;
+    }
+}
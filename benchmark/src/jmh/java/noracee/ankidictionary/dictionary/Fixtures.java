@@ -0,0 +1,130 @@
+package noracee.ankidictionary.dictionary;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds wwwjdic responses of a given number of entries from the entries in the fixtures, laid out
+ * like the 1ZUJ dictionary and 1ZTU example pages of the server
+ */
+
+final class Fixtures {
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Resources of the benchmarks
+    private static final String FILE_CODES    = "/dictionary_codes.txt";
+    private static final String FILE_ENTRIES  = "/fixtures/dictionary_entries.txt";
+    private static final String FILE_EXAMPLES = "/fixtures/example_entries.txt";
+
+    /// Page around the dictionary entries, each on a line of its own
+    private static final String DICTIONARY_HEAD = "<html><head><title>WWWJDIC: Word Display"
+            + "</title></head>\n<body>\n<p>Search results:</p>\n<pre>\n";
+    private static final String DICTIONARY_TAIL = "</pre>\n</body></html>\n";
+
+    /// Page around the example sentences, each item holding its Japanese and English translations
+    private static final String EXAMPLE_HEAD  = "<html><head><title>WWWJDIC: Examples"
+            + "</title></head>\n<body>\n<ul>\n";
+    private static final String EXAMPLE_ITEM  = "<li>";
+    private static final String EXAMPLE_BREAK = "\n<br>\n";
+    private static final String EXAMPLE_TAIL  = "</ul>\n</body></html>\n";
+
+    // Separates the Japanese and English translations of an example in the fixtures
+    private static final String SEPARATOR_EXAMPLE = "\t";
+
+    private Fixtures() {
+    }
+
+    /**
+     * Loads the code classification of the app
+     * @return code classification
+     * @throws IOException if the codes cannot be read
+     */
+    static DictionaryCodes codes() throws IOException {
+        InputStream is = Fixtures.class.getResourceAsStream(FILE_CODES);
+        try {
+            return new DictionaryCodes(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Retrieves the raw EDICT lines of the fixtures
+     * @return EDICT lines
+     * @throws IOException if the fixtures cannot be read
+     */
+    static List<String> dictionaryEntries() throws IOException {
+        return readLines(FILE_ENTRIES);
+    }
+
+    /**
+     * Builds a dictionary response, repeating the entries of the fixtures as needed
+     * @param entries number of entries in the response
+     * @return response body
+     * @throws IOException if the fixtures cannot be read
+     */
+    static byte[] dictionaryPage(int entries) throws IOException {
+        List<String> lines = dictionaryEntries();
+
+        StringBuilder sb = new StringBuilder(DICTIONARY_HEAD);
+        for (int i = 0; i < entries; i++)
+            sb.append(lines.get(i % lines.size())).append('\n');
+        sb.append(DICTIONARY_TAIL);
+
+        return sb.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * Retrieves the example items of the fixtures, as they appear between the item tags
+     * @return example items
+     * @throws IOException if the fixtures cannot be read
+     */
+    static List<String> exampleEntries() throws IOException {
+        List<String> items = new ArrayList<>();
+        for (String line : readLines(FILE_EXAMPLES)) {
+            String[] translations = line.split(SEPARATOR_EXAMPLE);
+            items.add(translations[0] + EXAMPLE_BREAK + translations[1]);
+        }
+
+        return items;
+    }
+
+    /**
+     * Builds an example response, repeating the examples of the fixtures as needed
+     * @param entries number of examples in the response
+     * @return response body
+     * @throws IOException if the fixtures cannot be read
+     */
+    static byte[] examplePage(int entries) throws IOException {
+        List<String> items = exampleEntries();
+
+        StringBuilder sb = new StringBuilder(EXAMPLE_HEAD);
+        for (int i = 0; i < entries; i++)
+            sb.append(EXAMPLE_ITEM).append(items.get(i % items.size())).append('\n');
+        sb.append(EXAMPLE_TAIL);
+
+        return sb.toString().getBytes(UTF_8);
+    }
+
+    private static List<String> readLines(String resource) throws IOException {
+        List<String> lines = new ArrayList<>();
+        BufferedReader br = new BufferedReader(new InputStreamReader(
+                Fixtures.class.getResourceAsStream(resource), UTF_8));
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (!line.isEmpty())
+                    lines.add(line);
+            }
+        } finally {
+            br.close();
+        }
+
+        return lines;
+    }
+}
@@ -0,0 +1,365 @@
+package noracee.ankidictionary.dictionary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns a conjugated word back into the dictionary forms it may come from with a table of suffix
+ * rules, e.g. 食べられなかった into 食べられない, 食べられる and 食べる. Each rule only applies to
+ * words of the classes it conjugates, and gives the class of the word it produces, so that rules
+ * chain without producing every possible suffix. A form is only a match for an entry if the entry
+ * has a part of speech code of its class, e.g. v1 for an ichidan verb. Rules are immutable once
+ * built, so an instance can be shared by any number of threads
+ */
+
+public class Deinflector {
+    /**
+     * Dictionary form a word may come from
+     */
+    public static class Form {
+        private int classes;
+        private String word;
+
+        Form(String word, int classes) {
+            this.word = word;
+            this.classes = classes;
+        }
+
+        /**
+         * Retrieves the dictionary form
+         * @return dictionary form
+         */
+        public String getWord() {
+            return word;
+        }
+    }
+
+    /// Classes of words, where a word may belong to several until it is matched with an entry
+    // Ichidan verb, e.g. 食べる
+    private static final int CLASS_V1      = 1;
+    // Godan verb, e.g. 書く
+    private static final int CLASS_V5      = 1 << 1;
+    // I-adjective, or a verb form conjugating like one, e.g. 高い or 食べない
+    private static final int CLASS_ADJ_I   = 1 << 2;
+    // The verb 来る
+    private static final int CLASS_VK      = 1 << 3;
+    // Suru verb, e.g. 勉強する
+    private static final int CLASS_VS      = 1 << 4;
+    // Te form, which is not a dictionary form, e.g. 書いて
+    private static final int CLASS_TE      = 1 << 5;
+    // The word as it was typed, which every rule for a final conjugation applies to
+    private static final int CLASS_INITIAL = 1 << 6;
+
+    // Classes of the word as it was typed, since it may be of any class
+    private static final int CLASSES_ALL = (1 << 7) - 1;
+    // Classes that are dictionary forms
+    private static final int CLASSES_DICTIONARY =
+            CLASS_V1 | CLASS_V5 | CLASS_ADJ_I | CLASS_VK | CLASS_VS;
+
+    /// Part of speech codes of each class
+    private static final String[] CODES_V1    = {"v1", "vz"};
+    private static final String[] CODES_ADJ_I = {"adj-i", "adj-ix"};
+    private static final String[] CODES_VK    = {"vk"};
+    private static final String[] CODES_VS    = {"vs", "vs-i", "vs-s"};
+    // Godan verbs, where the code depends on the last kana of the verb
+    private static final String GODAN_ENDINGS = "うくぐすつぬぶむる";
+    private static final String[][] CODES_V5 = {
+            {"v5u", "v5u-s"}, {"v5k", "v5k-s"}, {"v5g"}, {"v5s"}, {"v5t"}, {"v5n"}, {"v5b"},
+            {"v5m"}, {"v5r", "v5r-i", "v5aru"}};
+
+    /// Rows of godan verbs, in the order of GODAN_ENDINGS
+    // Kana of the verb stem followed by the negative, polite, potential and volitional endings
+    private static final String[] GODAN_STEMS = {
+            "わいえお", "かきけこ", "がぎげご", "さしせそ", "たちてと", "なにねの", "ばびべぼ",
+            "まみめも", "らりれろ"};
+    // Endings of the te form
+    private static final String[] GODAN_TE = {
+            "って", "いて", "いで", "して", "って", "んで", "んで", "んで", "って"};
+    // Endings of the past form
+    private static final String[] GODAN_TA = {
+            "った", "いた", "いだ", "した", "った", "んだ", "んだ", "んだ", "った"};
+
+    /// Endings following the stem of a verb in a final conjugation
+    // Polite forms, following the i stem of godan verbs
+    private static final String[] POLITE = {"ます", "ました", "ません", "ませんでした", "ましょう"};
+
+    // Upper bound on the forms a word is turned into, so that a long word stays cheap
+    private static final int LIMIT_FORMS = 64;
+
+    // Rules by the last character of the ending they remove
+    private static final Map<Character, List<Rule>> RULES = new HashMap<>();
+
+    static {
+        // ichidan verbs
+        for (String polite : POLITE)
+            addRule(polite, "る", CLASS_INITIAL, CLASS_V1);
+        addRule("た", "る", CLASS_INITIAL, CLASS_V1);
+        addRule("よう", "る", CLASS_INITIAL, CLASS_V1);
+        addRule("ろ", "る", CLASS_INITIAL, CLASS_V1);
+        addRule("れば", "る", CLASS_INITIAL, CLASS_V1);
+        addRule("たら", "る", CLASS_INITIAL, CLASS_V1);
+        addRule("たり", "る", CLASS_INITIAL, CLASS_V1);
+        addRule("ない", "る", CLASS_ADJ_I, CLASS_V1);
+        addRule("たい", "る", CLASS_ADJ_I, CLASS_V1);
+        addRule("て", "る", CLASS_TE, CLASS_V1);
+        addRule("られる", "る", CLASS_V1, CLASS_V1);
+        addRule("させる", "る", CLASS_V1, CLASS_V1);
+
+        // godan verbs
+        for (int i = 0; i < GODAN_ENDINGS.length(); i++) {
+            String u = GODAN_ENDINGS.substring(i, i + 1);
+            String a = GODAN_STEMS[i].substring(0, 1);
+            String stem = GODAN_STEMS[i].substring(1, 2);
+            String e = GODAN_STEMS[i].substring(2, 3);
+            String o = GODAN_STEMS[i].substring(3, 4);
+
+            for (String polite : POLITE)
+                addRule(stem + polite, u, CLASS_INITIAL, CLASS_V5);
+            addRule(GODAN_TA[i], u, CLASS_INITIAL, CLASS_V5);
+            addRule(GODAN_TA[i] + "ら", u, CLASS_INITIAL, CLASS_V5);
+            addRule(GODAN_TA[i] + "り", u, CLASS_INITIAL, CLASS_V5);
+            addRule(o + "う", u, CLASS_INITIAL, CLASS_V5);
+            addRule(e + "ば", u, CLASS_INITIAL, CLASS_V5);
+            addRule(e, u, CLASS_INITIAL, CLASS_V5);
+            addRule(a + "ない", u, CLASS_ADJ_I, CLASS_V5);
+            addRule(stem + "たい", u, CLASS_ADJ_I, CLASS_V5);
+            addRule(GODAN_TE[i], u, CLASS_TE, CLASS_V5);
+            addRule(a + "れる", u, CLASS_V1, CLASS_V5);
+            addRule(a + "せる", u, CLASS_V1, CLASS_V5);
+            addRule(e + "る", u, CLASS_V1, CLASS_V5);
+        }
+
+        // 行く, whose te and past forms are irregular
+        addRule("行った", "行く", CLASS_INITIAL, CLASS_V5);
+        addRule("いった", "いく", CLASS_INITIAL, CLASS_V5);
+        addRule("行って", "行く", CLASS_TE, CLASS_V5);
+        addRule("いって", "いく", CLASS_TE, CLASS_V5);
+
+        // i-adjectives
+        addRule("く", "い", CLASS_INITIAL, CLASS_ADJ_I);
+        addRule("くて", "い", CLASS_INITIAL, CLASS_ADJ_I);
+        addRule("さ", "い", CLASS_INITIAL, CLASS_ADJ_I);
+        addRule("ければ", "い", CLASS_INITIAL, CLASS_ADJ_I);
+        addRule("かったら", "い", CLASS_INITIAL, CLASS_ADJ_I);
+        addRule("かろう", "い", CLASS_INITIAL, CLASS_ADJ_I);
+        addRule("かった", "い", CLASS_ADJ_I, CLASS_ADJ_I);
+        addRule("くない", "い", CLASS_ADJ_I, CLASS_ADJ_I);
+
+        // progressive forms, conjugating like ichidan verbs
+        addRule("ている", "て", CLASS_V1, CLASS_TE);
+        addRule("でいる", "で", CLASS_V1, CLASS_TE);
+        addRule("てる", "て", CLASS_V1, CLASS_TE);
+        addRule("でる", "で", CLASS_V1, CLASS_TE);
+
+        // suru verbs, down to the noun they are made of
+        for (String polite : POLITE)
+            addRule("し" + polite, "する", CLASS_INITIAL, CLASS_VS);
+        addRule("した", "する", CLASS_INITIAL, CLASS_VS);
+        addRule("しよう", "する", CLASS_INITIAL, CLASS_VS);
+        addRule("しろ", "する", CLASS_INITIAL, CLASS_VS);
+        addRule("すれば", "する", CLASS_INITIAL, CLASS_VS);
+        addRule("したら", "する", CLASS_INITIAL, CLASS_VS);
+        addRule("しない", "する", CLASS_ADJ_I, CLASS_VS);
+        addRule("したい", "する", CLASS_ADJ_I, CLASS_VS);
+        addRule("して", "する", CLASS_TE, CLASS_VS);
+        addRule("される", "する", CLASS_V1, CLASS_VS);
+        addRule("させる", "する", CLASS_V1, CLASS_VS);
+        addRule("する", "", CLASS_VS, CLASS_VS);
+
+        // 来る, whose stem changes in every form
+        for (String kuru : new String[] {"来", "く"}) {
+            String ki = kuru.equals("来") ? "来" : "き";
+            String ko = kuru.equals("来") ? "来" : "こ";
+            String dictionary = kuru + "る";
+
+            for (String polite : POLITE)
+                addRule(ki + polite, dictionary, CLASS_INITIAL, CLASS_VK);
+            addRule(ki + "た", dictionary, CLASS_INITIAL, CLASS_VK);
+            addRule(ko + "よう", dictionary, CLASS_INITIAL, CLASS_VK);
+            addRule(ko + "い", dictionary, CLASS_INITIAL, CLASS_VK);
+            addRule(kuru + "れば", dictionary, CLASS_INITIAL, CLASS_VK);
+            addRule(ko + "ない", dictionary, CLASS_ADJ_I, CLASS_VK);
+            addRule(ki + "て", dictionary, CLASS_TE, CLASS_VK);
+            addRule(ko + "られる", dictionary, CLASS_V1, CLASS_VK);
+        }
+    }
+
+    // ids of the part of speech codes of each class
+    private int[] codesV1;
+    private int[] codesAdjI;
+    private int[] codesVk;
+    private int[] codesVs;
+    private int[][] codesV5;
+
+    private DictionaryCodes codes;
+
+    /**
+     * @param codes code classification to check the parts of speech of the entries with
+     */
+    public Deinflector(DictionaryCodes codes) {
+        this.codes = codes;
+
+        codesV1 = codes.findAll(CODES_V1);
+        codesAdjI = codes.findAll(CODES_ADJ_I);
+        codesVk = codes.findAll(CODES_VK);
+        codesVs = codes.findAll(CODES_VS);
+        codesV5 = new int[CODES_V5.length][];
+        for (int i = 0; i < CODES_V5.length; i++)
+            codesV5[i] = codes.findAll(CODES_V5[i]);
+    }
+
+    /**
+     * Turns a conjugated word into all the dictionary forms it may come from
+     * @param word normalized word as typed
+     * @return dictionary forms, other than the word itself, nearest first, or an empty list if the
+     *         word is empty
+     */
+    public List<Form> deinflect(String word) {
+        if (word.isEmpty())
+            return Collections.emptyList();
+
+        List<Form> forms = new ArrayList<>();
+        Map<String, Form> seen = new HashMap<>();
+
+        Form initial = new Form(word, CLASSES_ALL);
+        forms.add(initial);
+        seen.put(word, initial);
+
+        for (int i = 0; i < forms.size() && forms.size() < LIMIT_FORMS; i++) {
+            Form form = forms.get(i);
+            String current = form.word;
+            List<Rule> rules = RULES.get(current.charAt(current.length() - 1));
+            if (rules == null)
+                continue;
+
+            for (Rule rule : rules) {
+                if ((form.classes & rule.applies) == 0 || !current.endsWith(rule.from))
+                    continue;
+
+                // rules for irregular verbs may replace the whole word, but nothing is left empty
+                String deinflected = current.substring(0, current.length() - rule.from.length())
+                        + rule.to;
+                if (deinflected.isEmpty())
+                    continue;
+
+                Form existing = seen.get(deinflected);
+                if (existing != null) {
+                    existing.classes |= rule.result;
+                } else if (forms.size() < LIMIT_FORMS) {
+                    Form next = new Form(deinflected, rule.result);
+                    forms.add(next);
+                    seen.put(deinflected, next);
+                }
+            }
+        }
+
+        // only keeps the dictionary forms
+        List<Form> dictionary = new ArrayList<>(forms.size());
+        for (Form form : forms) {
+            if (form != initial && (form.classes & CLASSES_DICTIONARY) != 0)
+                dictionary.add(form);
+        }
+
+        return dictionary;
+    }
+
+    /**
+     * Determines whether or not an entry can be the dictionary form, by checking if any of its
+     * part of speech codes is of a class of the form
+     * @param form dictionary form
+     * @param line raw EDICT line of the entry
+     * @return true if the entry matches the form, or false otherwise
+     */
+    public boolean matches(Form form, String line) {
+        int end = line.length();
+        for (int open = line.indexOf('('); open != -1 && open < end;
+             open = line.indexOf('(', open + 1)) {
+            int close = line.indexOf(')', open + 1);
+            if (close == -1)
+                return false;
+
+            int start = open + 1;
+            for (int i = start; i <= close; i++) {
+                if (i == close || line.charAt(i) == ',') {
+                    if (accepts(form, codes.find(line, start, i)))
+                        return true;
+                    start = i + 1;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Determines whether or not a part of speech code is of a class of the form
+     */
+    private boolean accepts(Form form, int code) {
+        if (code == DictionaryCodes.NONE)
+            return false;
+
+        if ((form.classes & CLASS_V1) != 0 && contains(codesV1, code))
+            return true;
+        if ((form.classes & CLASS_ADJ_I) != 0 && contains(codesAdjI, code))
+            return true;
+        if ((form.classes & CLASS_VK) != 0 && contains(codesVk, code))
+            return true;
+        if ((form.classes & CLASS_VS) != 0 && contains(codesVs, code))
+            return true;
+
+        if ((form.classes & CLASS_V5) != 0 && !form.word.isEmpty()) {
+            int ending = GODAN_ENDINGS.indexOf(form.word.charAt(form.word.length() - 1));
+            if (ending != -1 && contains(codesV5[ending], code))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds a rule to the table
+     * @param from ending removed from the word
+     * @param to ending added in its place
+     * @param applies classes of the words the rule applies to
+     * @param result classes of the word produced
+     */
+    private static void addRule(String from, String to, int applies, int result) {
+        Character last = from.charAt(from.length() - 1);
+        List<Rule> rules = RULES.get(last);
+        if (rules == null) {
+            rules = new ArrayList<>();
+            RULES.put(last, rules);
+        }
+
+        rules.add(new Rule(from, to, applies, result));
+    }
+
+    private static boolean contains(int[] ids, int id) {
+        for (int i : ids) {
+            if (i == id)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Replaces the ending of words of some classes
+     */
+    private static class Rule {
+        private int applies;
+        private int result;
+        private String from;
+        private String to;
+
+        Rule(String from, String to, int applies, int result) {
+            this.from = from;
+            this.to = to;
+            this.applies = applies;
+            this.result = result;
+        }
+    }
+}
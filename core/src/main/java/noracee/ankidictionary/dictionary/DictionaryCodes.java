@@ -0,0 +1,202 @@
+package noracee.ankidictionary.dictionary;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Parses the dictionary codes file into a compiled table, where every code has an id with the
+ * flags classifying it and the name it is used with in the note, so that classifying a code found
+ * in a line takes a single probe without extracting it from the line. The table is immutable once
+ * parsed, so an instance can be shared by any number of threads
+ */
+
+public class DictionaryCodes {
+    // archaic definition that will be ignored
+    static final String ARCHAISM = "arch";
+
+    /// flags classifying a code, one for each line of the codes file
+    // codes that will be used in the note
+    static final int FLAG_CODE_USED    = 1;
+    // all codes available in the response
+    static final int FLAG_CODE         = 1 << 1;
+    // codes used for kanjis or readings that are used in the note
+    static final int FLAG_LITERAL_USED = 1 << 2;
+    // all codes available for kanjis and readings
+    static final int FLAG_LITERAL      = 1 << 3;
+
+    // id of a code that is not in the table
+    static final int NONE = -1;
+
+    // flag of each line of the codes file, in order
+    private static final int[] FLAGS_LINES =
+            {FLAG_CODE_USED, FLAG_CODE, FLAG_LITERAL_USED, FLAG_LITERAL};
+
+    // encoding of the codes file
+    private static final String ENCODING = "UTF-8";
+
+    // delimiter of codes
+    private static final String DELIMITER = ";";
+    // separates codes from their definitions or names
+    private static final String SEPARATOR = ":";
+
+    // open addressed table of the codes, with the id of the code in each slot
+    private String[] keys;
+    private int[] ids;
+    private int mask;
+
+    // flags and name of each code by id
+    private int[] flags;
+    private String[] names;
+    private int size;
+
+    /**
+     * @param is codes file, which is closed once read
+     * @throws IOException if the codes file cannot be read
+     */
+    public DictionaryCodes(InputStream is) throws IOException {
+        String[][] lines = new String[FLAGS_LINES.length][];
+        int count = 0;
+
+        InputStreamReader isr = new InputStreamReader(is, ENCODING);
+        BufferedReader br = new BufferedReader(isr);
+
+        try {
+            String line;
+            int index = 0;
+            while (index < lines.length && (line = br.readLine()) != null) {
+                lines[index] = line.split(DELIMITER);
+                count += lines[index].length;
+                index++;
+            }
+        } finally {
+            br.close();
+        }
+
+        // keeps the table at most half full, so that probes stay short
+        int capacity = Integer.highestOneBit(Math.max(count, 1)) << 2;
+        keys = new String[capacity];
+        ids = new int[capacity];
+        mask = capacity - 1;
+
+        flags = new int[count];
+        names = new String[count];
+
+        // parse the line from the file according to its index
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i] == null)
+                break;
+
+            for (String def : lines[i]) {
+                String[] parts = def.split(SEPARATOR);
+                add(parts[0], FLAGS_LINES[i], parts[1]);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the id of a code
+     * @param code code to find
+     * @return id of the code, or {@link #NONE NONE} if it is not a code
+     */
+    int find(String code) {
+        return find(code, 0, code.length());
+    }
+
+    /**
+     * Retrieves the id of a code within a line, without extracting it
+     * @param line line containing the code
+     * @param start start of the code in the line
+     * @param end end of the code in the line
+     * @return id of the code, or {@link #NONE NONE} if it is not a code
+     */
+    int find(String line, int start, int end) {
+        int slot = probe(line, start, end);
+        return keys[slot] == null ? NONE : ids[slot];
+    }
+
+    /**
+     * Retrieves the ids of the codes available in the response among some codes, leaving out the
+     * others
+     * @param codes codes to find
+     * @return ids of the codes found
+     */
+    int[] findAll(String[] codes) {
+        int[] found = new int[codes.length];
+        int count = 0;
+        for (String code : codes) {
+            int id = find(code);
+            if (is(id, FLAG_CODE))
+                found[count++] = id;
+        }
+
+        int[] ids = new int[count];
+        System.arraycopy(found, 0, ids, 0, count);
+        return ids;
+    }
+
+    /**
+     * Retrieves the name a code is used with in the note
+     * @param id id of the code
+     * @return the name of the code, or null if it will not be in the note
+     */
+    public String getName(int id) {
+        return id == NONE ? null : names[id];
+    }
+
+    /**
+     * Determines whether or not a code is classified with the given flag, e.g. whether it is a
+     * valid code for kanjis and readings with {@link #FLAG_LITERAL FLAG_LITERAL}
+     * @param id id of the code, or {@link #NONE NONE}
+     * @param flag flag to check
+     * @return true if the code has the flag, or false otherwise
+     */
+    boolean is(int id, int flag) {
+        return id != NONE && (flags[id] & flag) != 0;
+    }
+
+    /**
+     * Adds a code from the file to the table, or classifies it further if it is already there
+     * @param code code to add
+     * @param flag flag of the line containing the code
+     * @param name name of the code
+     */
+    private void add(String code, int flag, String name) {
+        int slot = probe(code, 0, code.length());
+        if (keys[slot] == null) {
+            keys[slot] = code;
+            ids[slot] = size++;
+        }
+
+        int id = ids[slot];
+        flags[id] |= flag;
+        if (flag == FLAG_CODE_USED)
+            names[id] = name.intern();
+    }
+
+    /**
+     * Finds the slot of a code in the table
+     * @param line line containing the code
+     * @param start start of the code in the line
+     * @param end end of the code in the line
+     * @return slot holding the code, or the empty slot it would be added to
+     */
+    private int probe(String line, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++)
+            hash = 31 * hash + line.charAt(i);
+
+        int length = end - start;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != null) {
+            String key = keys[slot];
+            if (key.length() == length && line.regionMatches(start, key, 0, length))
+                return slot;
+
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+}
@@ -0,0 +1,332 @@
+package noracee.ankidictionary.dictionary;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Looks up raw EDICT lines in the local binary dictionary index, so that queries can be answered
+ * without a round trip to the server.
+ *
+ * Layout of the index, all integers big-endian:
+ * <pre>
+ * header      magic, version, key count, block count, entry count, and the offsets of the block
+ *             table, entry table and entry data
+ * block table offset of every key block
+ * key blocks  up to {@link #SIZE_BLOCK SIZE_BLOCK} sorted keys per block, each written as varint
+ *             length shared with the previous key (0 for the first key of the block), varint
+ *             suffix length, UTF-8 suffix, varint entry count and varint entry ids as deltas
+ * entry table entry count + 1 offsets into the entry data
+ * entry data  UTF-8 raw EDICT lines
+ * </pre>
+ * Keys are the kanji and readings of every entry without their codes, folded by
+ * {@link KanaNormalizer#key(String) KanaNormalizer}, and sorted by their UTF-8 bytes.
+ * Lookups only use absolute reads on a duplicate of the buffer, so an index can be shared between
+ * threads
+ */
+
+public class DictionaryIndex {
+    static final int MAGIC   = 0x45444958; // EDIX
+    static final int VERSION = 2;
+
+    // Number of keys in a block, where the first key is written in full
+    static final int SIZE_BLOCK = 16;
+
+    // Size of the header in bytes
+    static final int SIZE_HEADER = 32;
+
+    // Maximum number of lines returned for a single lookup
+    private static final int LIMIT_RESULTS = 100;
+
+    // Initial capacity of the buffer holding the current key
+    private static final int CAPACITY_KEY = 64;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private int blockCount;
+    private int blockTableOffset;
+    private int entryCount;
+    private int entryDataOffset;
+    private int entryTableOffset;
+    private int keyCount;
+
+    private ByteBuffer buffer;
+
+    public DictionaryIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if (buffer.capacity() < SIZE_HEADER || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a dictionary index");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported dictionary index version: " + buffer.getInt(4));
+
+        keyCount = buffer.getInt(8);
+        blockCount = buffer.getInt(12);
+        entryCount = buffer.getInt(16);
+        blockTableOffset = buffer.getInt(20);
+        entryTableOffset = buffer.getInt(24);
+        entryDataOffset = buffer.getInt(28);
+    }
+
+    /**
+     * Maps a region of a file into memory as a dictionary index
+     * @param is stream of the file containing the index
+     * @param offset start of the index in the file
+     * @param length length of the index
+     * @return dictionary index backed by the mapped file
+     * @throws IOException if the file cannot be mapped or is not a dictionary index
+     */
+    public static DictionaryIndex map(FileInputStream is, long offset, long length)
+            throws IOException {
+        FileChannel channel = is.getChannel();
+        try {
+            // the mapping stays valid after the channel is closed
+            return new DictionaryIndex(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Retrieves the number of entries in this index
+     * @return number of entries
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Retrieves the number of keys in this index
+     * @return number of keys
+     */
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+    /**
+     * Looks up all the entries with a kanji or reading starting with the query, where entries
+     * matching the query exactly come first
+     * @param query kanji or reading to look up, which is folded into a key
+     * @return raw EDICT lines of the entries found, or an empty list if there are none
+     */
+    public List<String> lookup(String query) {
+        ByteBuffer buffer = this.buffer.duplicate();
+        byte[] target = KanaNormalizer.key(query).getBytes(UTF_8);
+
+        Set<Integer> exact = new LinkedHashSet<>();
+        Set<Integer> prefixed = new LinkedHashSet<>();
+        if (target.length > 0 && blockCount > 0)
+            collect(buffer, target, exact, prefixed);
+
+        // the scan stops at the limit, and the prefixed ids leave out the exact ones
+        List<String> lines = new ArrayList<>(exact.size() + prefixed.size());
+        for (int id : exact)
+            lines.add(readEntry(buffer, id));
+        for (int id : prefixed)
+            lines.add(readEntry(buffer, id));
+
+        return lines;
+    }
+
+    /**
+     * Looks up the entries with a kanji or reading matching any of the queries exactly, all on the
+     * same view of the index, e.g. for every dictionary form a conjugated word may come from
+     * @param queries kanji or readings to look up, which are folded into keys
+     * @return raw EDICT lines of the entries found for each query, in the order of the queries,
+     * leaving out the queries without any entries
+     */
+    public Map<String, List<String>> lookupExact(Collection<String> queries) {
+        ByteBuffer buffer = this.buffer.duplicate();
+        Map<String, List<String>> found = new LinkedHashMap<>();
+
+        Set<Integer> exact = new LinkedHashSet<>();
+        for (String query : queries) {
+            byte[] target = KanaNormalizer.key(query).getBytes(UTF_8);
+            if (target.length == 0 || blockCount == 0)
+                continue;
+
+            exact.clear();
+            collect(buffer, target, exact, null);
+            if (exact.isEmpty())
+                continue;
+
+            List<String> lines = new ArrayList<>(exact.size());
+            for (int id : exact)
+                lines.add(readEntry(buffer, id));
+            found.put(query, lines);
+        }
+
+        return found;
+    }
+
+    /**
+     * Collects the entry ids of the keys starting with the target, until
+     * {@link #LIMIT_RESULTS LIMIT_RESULTS} ids are collected. The key matching the target exactly
+     * sorts before any longer key, so its entries are always collected first
+     * @param buffer buffer to read from
+     * @param target key to look for as UTF-8
+     * @param exact entry ids of keys matching the target exactly
+     * @param prefixed entry ids of longer keys starting with the target, other than the exact
+     *                 ones, or null to stop once the key matching the target exactly has been
+     *                 passed
+     */
+    private void collect(ByteBuffer buffer, byte[] target, Set<Integer> exact,
+                         Set<Integer> prefixed) {
+        byte[] key = new byte[Math.max(CAPACITY_KEY, target.length)];
+
+        // finds the last block whose first key comes before the target
+        int low = 0;
+        int high = blockCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            buffer.position(buffer.getInt(blockTableOffset + mid * 4));
+            readVarint(buffer); // first key shares nothing
+            int length = readVarint(buffer);
+            if (compare(buffer, buffer.position(), length, target) <= 0)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+
+        for (int block = low; block < blockCount; block++) {
+            buffer.position(buffer.getInt(blockTableOffset + block * 4));
+            int keyLength = 0;
+            int keys = Math.min(SIZE_BLOCK, keyCount - block * SIZE_BLOCK);
+            for (int i = 0; i < keys; i++) {
+                int shared = readVarint(buffer);
+                int suffix = readVarint(buffer);
+                keyLength = shared + suffix;
+                if (keyLength > key.length) {
+                    byte[] grown = new byte[keyLength * 2];
+                    System.arraycopy(key, 0, grown, 0, shared);
+                    key = grown;
+                }
+                buffer.get(key, shared, suffix);
+
+                int order = compare(key, keyLength, target);
+                int count = readVarint(buffer);
+                if (order < 0) {
+                    skipVarints(buffer, count);
+                } else if (keyLength >= target.length && startsWith(key, target)) {
+                    if (prefixed == null && keyLength > target.length)
+                        return;
+                    if (keyLength == target.length)
+                        readPostings(buffer, count, exact, null, LIMIT_RESULTS);
+                    else
+                        readPostings(buffer, count, prefixed, exact,
+                                LIMIT_RESULTS - exact.size());
+
+                    if (exact.size() + (prefixed == null ? 0 : prefixed.size()) >= LIMIT_RESULTS)
+                        return;
+                } else {
+                    // keys are sorted so no other key can start with the target
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the raw EDICT line of an entry
+     * @param buffer buffer to read from
+     * @param id id of the entry
+     * @return raw EDICT line
+     */
+    private String readEntry(ByteBuffer buffer, int id) {
+        int start = buffer.getInt(entryTableOffset + id * 4);
+        int end = buffer.getInt(entryTableOffset + (id + 1) * 4);
+
+        byte[] bytes = new byte[end - start];
+        buffer.position(entryDataOffset + start);
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Reads the delta encoded entry ids of a key, stopping early once the set is full
+     * @param buffer buffer to read from
+     * @param count number of entry ids
+     * @param ids set to add the entry ids to
+     * @param excluded entry ids to leave out, or null
+     * @param limit size the set may grow to
+     */
+    private static void readPostings(ByteBuffer buffer, int count, Set<Integer> ids,
+                                     Set<Integer> excluded, int limit) {
+        int id = 0;
+        for (int i = 0; i < count && ids.size() < limit; i++) {
+            id += readVarint(buffer);
+            if (excluded == null || !excluded.contains(id))
+                ids.add(id);
+        }
+    }
+
+    /**
+     * Reads an unsigned variable length integer, 7 bits per byte with the high bit set on all but
+     * the last byte
+     * @param buffer buffer to read from
+     * @return integer read
+     */
+    static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return value;
+    }
+
+    private static void skipVarints(ByteBuffer buffer, int count) {
+        for (int i = 0; i < count; i++)
+            readVarint(buffer);
+    }
+
+    /**
+     * Compares a key in the buffer with the target as unsigned bytes
+     */
+    private static int compare(ByteBuffer buffer, int offset, int length, byte[] target) {
+        int min = Math.min(length, target.length);
+        for (int i = 0; i < min; i++) {
+            int difference = (buffer.get(offset + i) & 0xFF) - (target[i] & 0xFF);
+            if (difference != 0)
+                return difference;
+        }
+
+        return length - target.length;
+    }
+
+    /**
+     * Compares a key with the target as unsigned bytes
+     */
+    private static int compare(byte[] key, int length, byte[] target) {
+        int min = Math.min(length, target.length);
+        for (int i = 0; i < min; i++) {
+            int difference = (key[i] & 0xFF) - (target[i] & 0xFF);
+            if (difference != 0)
+                return difference;
+        }
+
+        return length - target.length;
+    }
+
+    private static boolean startsWith(byte[] key, byte[] target) {
+        for (int i = 0; i < target.length; i++) {
+            if (key[i] != target[i])
+                return false;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,79 @@
+package noracee.ankidictionary.dictionary;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import noracee.ankidictionary.entity.Vocabulary;
+
+/**
+ * Reads the vocabularies of a dictionary response line by line, tokenizing every EDICT line
+ * between the pre tags, so that a response can be parsed while it is still being downloaded. Owns a
+ * tokenizer, so an instance must only be used by one thread at a time
+ */
+
+public class EdictResponseReader {
+    /**
+     * Listener to receive the vocabularies read before the rest of the response has arrived
+     */
+    public interface OnBatchListener {
+        /**
+         * Receives a batch of vocabularies, on the thread reading the response
+         * @param batch vocabularies read since the previous batch
+         */
+        void onBatch(List<Vocabulary> batch);
+    }
+
+    /// Tags enclosing the dictionary vocabularies in the HTML DOM, each on a line of its own
+    // Ends the line before the first vocabulary
+    private static final String TAG_OPEN  = "<pre>";
+    // Starts the line after the last vocabulary
+    private static final String TAG_CLOSE = "</pre>";
+
+    private EdictTokenizer tokenizer;
+
+    /**
+     * @param codes code classification to tokenize the lines with
+     */
+    public EdictResponseReader(DictionaryCodes codes) {
+        tokenizer = new EdictTokenizer(codes);
+    }
+
+    /**
+     * Reads the vocabularies of a response up to the closing tag
+     * @param reader reader of the response
+     * @param query query the response was requested for
+     * @param listener listener to hand the batches read so far to whenever reading on would wait
+     *                 for more of the response, or null to only return the complete result
+     * @return vocabularies read, or null if the response has no vocabularies to read
+     * @throws IOException if the response cannot be read
+     */
+    public List<Vocabulary> read(BufferedReader reader, String query, OnBatchListener listener)
+            throws IOException {
+        List<Vocabulary> results = new ArrayList<>();
+        int published = 0;
+        boolean open = false;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!open) {
+                open = line.endsWith(TAG_OPEN);
+                continue;
+            }
+
+            if (line.startsWith(TAG_CLOSE))
+                return results;
+
+            if (!line.isEmpty())
+                results.add(tokenizer.parseLine(query, line));
+
+            if (listener != null && results.size() > published && !reader.ready()) {
+                listener.onBatch(new ArrayList<>(results.subList(published, results.size())));
+                published = results.size();
+            }
+        }
+
+        return null;
+    }
+}
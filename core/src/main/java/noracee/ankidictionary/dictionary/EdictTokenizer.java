@@ -0,0 +1,553 @@
+package noracee.ankidictionary.dictionary;
+
+import java.util.List;
+
+import noracee.ankidictionary.entity.Vocabulary;
+
+/**
+ * Tokenizes the raw EDICT lines of a dictionary response into {@link Vocabulary Vocabulary},
+ * walking each line once and classifying codes as they are encountered instead of running a regex
+ * pipeline over every section. Buffers are reused between lines, so an instance must only be used
+ * by one thread at a time
+ */
+
+public class EdictTokenizer {
+    // Capacity for the StringBuilder
+    private static final int CAPACITY_DEF  = 100;
+    private static final int CAPACITY_POS  = 16;
+    private static final int CAPACITY_TEXT = 64;
+    // Initial capacity for the codes found in a section
+    private static final int CAPACITY_CODES = 8;
+
+    /// kinds of codes found in a section
+    // domain code, e.g. {comp}
+    private static final int CODE_DOMAIN  = 0;
+    // part of speech code, e.g. (n)
+    private static final int CODE_POS     = 1;
+    // archaic code, which discards the section
+    private static final int CODE_ARCHAIC = 2;
+
+    // Delimiter to separate entities
+    private static final String DELIMITER_DEF = ", ";
+    private static final String DELIMITER_POS = "　";
+
+    /// Grammar of a line
+    /// Example line:
+    /// kanji1(P);kanji2(oK) [reading1(P);reading2(ok)] /(pos) (1) (See ...) definition/(pos) (2) definition2/(P)/
+    // Encloses codes
+    private static final char CODE_OPEN     = '(';
+    private static final char CODE_CLOSE    = ')';
+    // Encloses domains
+    private static final char DOMAIN_OPEN   = '{';
+    private static final char DOMAIN_CLOSE  = '}';
+    // Encloses the readings
+    private static final char READING_OPEN  = '[';
+    private static final char READING_CLOSE = ']';
+    // Separates parts of speech within the same code
+    private static final char SEPARATOR_CODE_DEFS = ',';
+    // Separates definitions
+    private static final char SEPARATOR_DEFS = '/';
+    // Separates kanji and reading sets
+    private static final char SEPARATOR_SET  = ';';
+    // Separates kanji and readings from definitions
+    private static final String SEPARATOR_PARTS = " /";
+
+    // Marks a code that applies specifically to some vocabularies
+    private static final String PREFIX_ESPECIALLY = "esp";
+    // Marks a "See also" code
+    private static final String PREFIX_SEE        = "See";
+    // Marks a code that only applies to some vocabularies
+    private static final String SUFFIX_ONLY       = "only";
+
+    private DictionaryCodes codes;
+
+    private StringBuilder def;
+    private StringBuilder pos;
+    private StringBuilder text;
+
+    // codes found in the current section, with their ids
+    private int codeCount;
+    private int[] codeKinds;
+    private int[] codeIds;
+
+    // state of the current line
+    private boolean pass;
+    private int index;
+
+    public EdictTokenizer(DictionaryCodes codes) {
+        this.codes = codes;
+
+        def = new StringBuilder(CAPACITY_DEF);
+        pos = new StringBuilder(CAPACITY_POS);
+        text = new StringBuilder(CAPACITY_TEXT);
+
+        codeKinds = new int[CAPACITY_CODES];
+        codeIds = new int[CAPACITY_CODES];
+    }
+
+    /**
+     * Tokenizes every line of the result into a {@link Vocabulary Vocabulary}
+     * @param query query used to search for the result
+     * @param result result extracted from the HTML DOM
+     * @param vocabularies list the vocabularies will be added to
+     */
+    void parse(String query, String result, List<Vocabulary> vocabularies) {
+        int length = result.length();
+        int start = 0;
+        while (start < length) {
+            int end = start;
+            while (end < length && !isLineBreak(result.charAt(end)))
+                end++;
+
+            if (end > start)
+                vocabularies.add(parseLine(query, result.substring(start, end)));
+
+            // \r\n counts as a single line break
+            if (end + 1 < length && result.charAt(end) == '\r' && result.charAt(end + 1) == '\n')
+                end++;
+
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Tokenizes a single line into a {@link Vocabulary Vocabulary}
+     * @param query query used to search for the line
+     * @param line raw EDICT line
+     * @return vocabulary parsed from the line
+     */
+    public Vocabulary parseLine(String query, String line) {
+        Vocabulary vocabulary = new Vocabulary(query, line, codes);
+
+        int parts = line.indexOf(SEPARATOR_PARTS);
+        parseLiteral(vocabulary, line, parts == -1 ? line.length() : parts);
+        if (parts != -1)
+            parseSections(vocabulary, line, parts + SEPARATOR_PARTS.length(), line.length());
+
+        return vocabulary;
+    }
+
+    /**
+     * Records a code found in the current section
+     * @param kind kind of code
+     * @param id id of the code
+     */
+    private void addCode(int kind, int id) {
+        if (codeCount == codeKinds.length) {
+            int[] kinds = new int[codeCount * 2];
+            int[] ids = new int[codeCount * 2];
+            System.arraycopy(codeKinds, 0, kinds, 0, codeCount);
+            System.arraycopy(codeIds, 0, ids, 0, codeCount);
+            codeKinds = kinds;
+            codeIds = ids;
+        }
+
+        codeKinds[codeCount] = kind;
+        codeIds[codeCount] = id;
+        codeCount++;
+    }
+
+    /**
+     * Adds a part of speech to the buffer
+     * @param name name of the part of speech
+     */
+    private void addPos(String name) {
+        if (pos.length() != 0)
+            pos.append(DELIMITER_POS);
+        pos.append(name);
+    }
+
+    /**
+     * Adds the current definition and parts of speech to the {@link Vocabulary Vocabulary}
+     * @param vocabulary Vocabulary to add definition and parts of speech to
+     */
+    private void flush(Vocabulary vocabulary) {
+        vocabulary.addDefinition(def.toString());
+        vocabulary.addPartsOfSpeech(pos.toString());
+    }
+
+    /**
+     * Adds the kanji to the {@link Vocabulary Vocabulary} if it matches the query, removing its
+     * code if the code is used
+     * @param vocabulary Vocabulary to be parsed into
+     * @param line line containing the kanji
+     * @param start start of the kanji in the line
+     * @param end end of the kanji in the line
+     */
+    private void parseKanji(Vocabulary vocabulary, String line, int start, int end) {
+        if (KanaNormalizer.indexOf(line, vocabulary.getQuery(), start, end) == -1)
+            return;
+
+        int open = findGroup(line, CODE_OPEN, CODE_CLOSE, start, end);
+        if (open != -1) {
+            int close = line.indexOf(CODE_CLOSE, open + 1);
+            if (codes.is(codes.find(line, open + 1, close), DictionaryCodes.FLAG_LITERAL_USED)) {
+                vocabulary.addKanji(remove(line, start, end, open, close + 1));
+                return;
+            }
+        }
+
+        vocabulary.addKanji(line.substring(start, end));
+    }
+
+    /**
+     * Parses the kanjis and readings
+     * @param vocabulary Vocabulary to be parsed into
+     * @param line line containing the kanjis and readings
+     * @param end end of the kanjis and readings in the line
+     */
+    private void parseLiteral(Vocabulary vocabulary, String line, int end) {
+        int kanjiEnd = 0;
+        while (kanjiEnd < end && !isWhitespace(line.charAt(kanjiEnd)))
+            kanjiEnd++;
+
+        int start = 0;
+        for (int i = 0; i <= kanjiEnd; i++) {
+            if (i == kanjiEnd || line.charAt(i) == SEPARATOR_SET) {
+                parseKanji(vocabulary, line, start, i);
+                start = i + 1;
+            }
+        }
+
+        if (kanjiEnd < end) {
+            int readingEnd = kanjiEnd + 1;
+            while (readingEnd < end && !isWhitespace(line.charAt(readingEnd)))
+                readingEnd++;
+
+            parseReadings(vocabulary, line, kanjiEnd + 1, readingEnd);
+        }
+    }
+
+    /**
+     * Adds the reading to the {@link Vocabulary Vocabulary} if it is not an irregular or outdated
+     * reading, removing its code if the code is used
+     * @param vocabulary Vocabulary to add reading to
+     * @param line line containing the reading
+     * @param start start of the reading in the line
+     * @param end end of the reading in the line
+     */
+    private void parseReading(Vocabulary vocabulary, String line, int start, int end) {
+        int open = findGroup(line, CODE_OPEN, CODE_CLOSE, start, end);
+        if (open != -1) {
+            int close = line.indexOf(CODE_CLOSE, open + 1);
+            int code = codes.find(line, open + 1, close);
+            // ignores readings with irregular or outdated
+            if (codes.is(code, DictionaryCodes.FLAG_LITERAL_USED))
+                vocabulary.addReading(remove(line, start, end, open, close + 1));
+            else if (!codes.is(code, DictionaryCodes.FLAG_LITERAL))
+                vocabulary.addReading(line.substring(start, end));
+        }
+    }
+
+    /**
+     * Parses the readings
+     * @param vocabulary Vocabulary to be parsed into
+     * @param line line containing the readings
+     * @param start start of the readings in the line
+     * @param end end of the readings in the line
+     */
+    private void parseReadings(Vocabulary vocabulary, String line, int start, int end) {
+        int open = findGroup(line, READING_OPEN, READING_CLOSE, start, end);
+        if (open == -1)
+            return;
+
+        int close = line.indexOf(READING_CLOSE, open + 1);
+        // checks if there are multiple readings
+        if (indexOf(line, SEPARATOR_SET, open + 1, close) == -1) {
+            // only one reading so just add it to vocabulary
+            vocabulary.setReading(line.substring(open + 1, close));
+        } else {
+            int readingStart = open + 1;
+            for (int i = readingStart; i <= close; i++) {
+                if (i == close || line.charAt(i) == SEPARATOR_SET) {
+                    parseReading(vocabulary, line, readingStart, i);
+                    readingStart = i + 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Scans a section, removing its codes from the text, then applies them in the same order as
+     * the sections were always handled: a new definition set, codes that only apply to some
+     * vocabularies, domains, and finally parts of speech
+     * @param vocabulary Vocabulary to add definitions, parts of speech and tags to
+     * @param line line containing the section
+     * @param start start of the section in the line
+     * @param end end of the section in the line
+     */
+    private void parseSection(Vocabulary vocabulary, String line, int start, int end) {
+        String query = vocabulary.getQuery();
+
+        boolean newSection = false;
+        boolean only = false;
+        codeCount = 0;
+        text.setLength(0);
+
+        int i = start;
+        while (i < end) {
+            char c = line.charAt(i);
+
+            if (c == CODE_OPEN) {
+                int close = line.indexOf(CODE_CLOSE, i + 1);
+                if (close > i + 1 && close < end) {
+                    int codeStart = i + 1;
+                    i = close + 1;
+
+                    if (!newSection && isIndex(line, codeStart, close, index)) {
+                        newSection = true;
+                        continue;
+                    }
+
+                    // checks if this section applies to the current vocabulary
+                    if (close - codeStart > SUFFIX_ONLY.length()
+                            && line.startsWith(SUFFIX_ONLY, close - SUFFIX_ONLY.length())) {
+                        if (KanaNormalizer.indexOf(line, query, codeStart,
+                                close - SUFFIX_ONLY.length()) == -1)
+                            only = true;
+                        continue;
+                    }
+
+                    // checks if this section applies specifically to the current vocabulary
+                    if (close - codeStart > PREFIX_ESPECIALLY.length() + 1
+                            && line.startsWith(PREFIX_ESPECIALLY, codeStart)
+                            && KanaNormalizer.indexOf(line, query, codeStart, close) != -1)
+                        continue;
+
+                    // removes the "See also" part
+                    if (close - codeStart > PREFIX_SEE.length()
+                            && line.startsWith(PREFIX_SEE, codeStart))
+                        continue;
+
+                    if (!parseSectionPos(line, codeStart, close))
+                        text.append(line, codeStart - 1, close + 1);
+                    continue;
+                }
+            } else if (c == DOMAIN_OPEN) {
+                int close = line.indexOf(DOMAIN_CLOSE, i + 1);
+                if (close > i + 1 && close < end) {
+                    int code = codes.find(line, i + 1, close);
+                    // only removes this part if it is a domain
+                    if (codes.is(code, DictionaryCodes.FLAG_CODE))
+                        addCode(CODE_DOMAIN, code);
+                    else
+                        text.append(line, i, close + 1);
+
+                    i = close + 1;
+                    continue;
+                }
+            }
+
+            text.append(c);
+            i++;
+        }
+
+        if (newSection) {
+            // if there is anything to add to vocabulary
+            if (def.length() > 0)
+                flush(vocabulary);
+
+            def.setLength(0);
+            pos.setLength(0);
+
+            pass = false;
+            index++;
+        }
+
+        if (only) {
+            pass = true;
+            return;
+        }
+
+        for (int j = 0; j < codeCount; j++) {
+            if (codeKinds[j] == CODE_DOMAIN) {
+                // discards the section if the domain is not important
+                String name = codes.getName(codeIds[j]);
+                if (name == null) {
+                    pass = true;
+                    return;
+                }
+
+                vocabulary.addTag(codeIds[j]);
+                addPos(name);
+            }
+        }
+
+        if (pass)
+            return;
+
+        for (int j = 0; j < codeCount; j++) {
+            if (codeKinds[j] == CODE_ARCHAIC) {
+                pass = true;
+                return;
+            }
+
+            String name = codes.getName(codeIds[j]);
+            if (codeKinds[j] == CODE_POS && name != null) {
+                vocabulary.addTag(codeIds[j]);
+                addPos(name);
+            }
+        }
+
+        // adds the section to the definition buffer
+        int textStart = 0;
+        int textEnd = text.length();
+        while (textStart < textEnd && text.charAt(textStart) <= ' ')
+            textStart++;
+        while (textEnd > textStart && text.charAt(textEnd - 1) <= ' ')
+            textEnd--;
+
+        if (textStart < textEnd) {
+            if (def.length() != 0)
+                def.append(DELIMITER_DEF);
+            def.append(text, textStart, textEnd);
+        }
+    }
+
+    /**
+     * Checks if the code contains parts of speech and records them
+     * @param line line containing the code
+     * @param start start of the code in the line
+     * @param end end of the code in the line
+     * @return true if the code was recorded and should be removed from the section, or false
+     * otherwise
+     */
+    private boolean parseSectionPos(String line, int start, int end) {
+        if (indexOf(line, DictionaryCodes.ARCHAISM, start, end) != -1) {
+            addCode(CODE_ARCHAIC, DictionaryCodes.NONE);
+            return true;
+        }
+
+        // checks for multiple pos in the same definition
+        boolean found = false;
+        int codeStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || line.charAt(i) == SEPARATOR_CODE_DEFS) {
+                int code = codes.find(line, codeStart, i);
+                if (codes.is(code, DictionaryCodes.FLAG_CODE)) {
+                    addCode(CODE_POS, code);
+                    found = true;
+                }
+
+                codeStart = i + 1;
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Parses the definitions and parts of speech
+     * @param vocabulary Vocabulary to parse into
+     * @param line line containing the sections
+     * @param start start of the sections in the line
+     * @param end end of the sections in the line
+     */
+    private void parseSections(Vocabulary vocabulary, String line, int start, int end) {
+        pass = false; // discard irrelevant sections
+        index = 1; // index starts at 1
+
+        def.setLength(0);
+        pos.setLength(0);
+
+        int sectionStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || line.charAt(i) == SEPARATOR_DEFS) {
+                parseSection(vocabulary, line, sectionStart, i);
+                sectionStart = i + 1;
+            }
+        }
+
+        if (!pass)
+            flush(vocabulary);
+    }
+
+    /**
+     * Removes a part of a substring of the line
+     * @param line line containing the substring
+     * @param start start of the substring
+     * @param end end of the substring
+     * @param removeStart start of the part to be removed
+     * @param removeEnd end of the part to be removed
+     * @return substring without the removed part
+     */
+    private String remove(String line, int start, int end, int removeStart, int removeEnd) {
+        text.setLength(0);
+        text.append(line, start, removeStart).append(line, removeEnd, end);
+        return text.toString();
+    }
+
+    /**
+     * Finds the first group enclosed by the given characters that is not empty
+     * @param line line to search
+     * @param open character opening the group
+     * @param close character closing the group
+     * @param start start of the search
+     * @param end end of the search
+     * @return index of the opening character, or -1 if there is no group
+     */
+    private static int findGroup(String line, char open, char close, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (line.charAt(i) == open) {
+                int closeIndex = line.indexOf(close, i + 1);
+                if (closeIndex == -1 || closeIndex >= end)
+                    return -1;
+                if (closeIndex > i + 1)
+                    return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Finds a character within a range of the line
+     * @return index of the character, or -1 if it is not found
+     */
+    private static int indexOf(String line, char c, int start, int end) {
+        int i = line.indexOf(c, start);
+        return i < end ? i : -1;
+    }
+
+    /**
+     * Finds a String within a range of the line
+     * @return index of the String, or -1 if it is not found
+     */
+    private static int indexOf(String line, String value, int start, int end) {
+        int last = end - value.length();
+        for (int i = start; i <= last; i++) {
+            if (line.startsWith(value, i))
+                return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Checks if the code is the index of the next definition set, e.g. (2)
+     */
+    private static boolean isIndex(String line, int start, int end, int index) {
+        if (line.charAt(start) == '0')
+            return false;
+
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9' || value > index)
+                return false;
+
+            value = value * 10 + (c - '0');
+        }
+
+        return value == index;
+    }
+
+    private static boolean isLineBreak(char c) {
+        return c == '\n' || c == '\r' || c == '\u000B' || c == '\f' || c == '\u0085'
+                || c == '\u2028' || c == '\u2029';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
@@ -0,0 +1,60 @@
+package noracee.ankidictionary.dictionary;
+
+import java.util.List;
+
+import noracee.ankidictionary.entity.Example;
+
+/**
+ * Splits the example sentences extracted from an example response into {@link Example Example},
+ * each made of its Japanese and English translations
+ */
+
+public class ExampleTokenizer {
+    // Number of parts when an example string is split
+    private static final int COUNT_TRANSLATIONS = 3;
+    // Positions of the translations when example string is split
+    private static final int POSITION_ENGLISH = 2;
+    private static final int POSITION_JAPANESE = 0;
+
+    // Separates examples
+    private static final String REGEX_EXAMPLES  = "<li>";
+    // Separates translations
+    private static final String REGEX_TRANSLATION = "\\R";
+
+    private ExampleTokenizer() {
+    }
+
+    /**
+     * Separates the example sentences
+     * @param response result extracted from the HTML DOM
+     * @param examples list to add the examples to
+     * @return true if some examples could not be parsed
+     */
+    public static boolean parse(String response, List<Example> examples) {
+        boolean malformed = false;
+
+        String[] sentences = response.split(REGEX_EXAMPLES);
+        for (String sentence : sentences) {
+            if (sentence.length() > 0 && !parseExample(sentence.trim(), examples))
+                malformed = true;
+        }
+
+        return malformed;
+    }
+
+    /**
+     * Parses an example sentence into an {@link Example Example}
+     * @param exampleString example sentence as a string
+     * @param examples list to add the example to
+     * @return false if the translations cannot be separated
+     */
+    public static boolean parseExample(String exampleString, List<Example> examples) {
+        // splits Japanese from English translation
+        String[] translations = exampleString.split(REGEX_TRANSLATION);
+        if (translations.length != COUNT_TRANSLATIONS)
+            return false;
+
+        examples.add(new Example(translations[POSITION_JAPANESE], translations[POSITION_ENGLISH]));
+        return true;
+    }
+}
@@ -0,0 +1,156 @@
+package noracee.ankidictionary.dictionary;
+
+/**
+ * Normalizes queries with range arithmetic and a single table instead of regexes or
+ * java.text.Normalizer, so that the same word typed differently is cached, looked up and matched
+ * once. Queries are folded into full-width katakana and half-width ASCII, and their keys further
+ * fold katakana into hiragana and ASCII letters into lower case, e.g. ｶﾀｶﾅ, カタカナ and かたかな
+ * share a key
+ */
+
+public final class KanaNormalizer {
+    /// Ranges of characters that are folded
+    // Full-width ASCII, folded by subtracting OFFSET_WIDTH
+    private static final char FULL_WIDTH_FIRST = '\uFF01';
+    private static final char FULL_WIDTH_LAST  = '\uFF5E';
+    private static final int  OFFSET_WIDTH     = 0xFEE0;
+    // Half-width katakana and punctuation, folded through HALF_WIDTH
+    private static final char HALF_WIDTH_FIRST = '\uFF61';
+    private static final char HALF_WIDTH_LAST  = '\uFF9F';
+    // Katakana with a hiragana counterpart, folded by subtracting OFFSET_KANA
+    private static final char KATAKANA_FIRST   = 'ァ';
+    private static final char KATAKANA_LAST    = 'ヶ';
+    // Katakana iteration marks, folded by subtracting OFFSET_KANA
+    private static final char ITERATION_FIRST  = 'ヽ';
+    private static final char ITERATION_LAST   = 'ヾ';
+    private static final int  OFFSET_KANA      = 0x60;
+
+    // Full-width forms of the half-width characters, in order
+    private static final String HALF_WIDTH = "。「」、・ヲァィゥェォャュョッーアイウエオカキクケコサシスセソタチツテト"
+            + "ナニヌネノハヒフヘホマミムメモヤユヨラリルレロワン゛゜";
+
+    /// Half-width sound marks, which are combined with the katakana before them
+    private static final char MARK_VOICED      = '\uFF9E';
+    private static final char MARK_SEMI_VOICED = '\uFF9F';
+    // Katakana whose voiced form follows them
+    private static final String VOICEABLE      = "カキクケコサシスセソタチツテトハヒフヘホ";
+    // Katakana whose semi-voiced form follows their voiced form
+    private static final String SEMI_VOICEABLE = "ハヒフヘホ";
+    // The only other katakana with a voiced form
+    private static final char KATAKANA_U       = 'ウ';
+    private static final char KATAKANA_VU      = 'ヴ';
+
+    private static final char SPACE_IDEOGRAPHIC = '\u3000';
+
+    private KanaNormalizer() {}
+
+    /**
+     * Folds a single character into its match form, where a character and its match form are
+     * always the same length, so that lines can be matched without being copied
+     * @param c character to fold
+     * @return match form of the character
+     */
+    public static char fold(char c) {
+        if (c >= FULL_WIDTH_FIRST && c <= FULL_WIDTH_LAST)
+            c = (char) (c - OFFSET_WIDTH);
+
+        if ((c >= KATAKANA_FIRST && c <= KATAKANA_LAST)
+                || (c >= ITERATION_FIRST && c <= ITERATION_LAST))
+            return (char) (c - OFFSET_KANA);
+        if (c >= 'A' && c <= 'Z')
+            return (char) (c + ('a' - 'A'));
+
+        return c;
+    }
+
+    /**
+     * Finds the first match of a query within a range of a line, comparing the match forms of
+     * their characters
+     * @param line line to search
+     * @param query normalized query to find
+     * @param start start of the search
+     * @param end end of the search
+     * @return index of the match, or -1 if the query is not found
+     */
+    public static int indexOf(String line, String query, int start, int end) {
+        int length = query.length();
+        int last = end - length;
+
+        search:
+        for (int i = start; i <= last; i++) {
+            for (int j = 0; j < length; j++) {
+                if (fold(line.charAt(i + j)) != fold(query.charAt(j)))
+                    continue search;
+            }
+
+            return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Normalizes a query and folds it into the key it is cached and looked up with
+     * @param query query as typed
+     * @return key of the query
+     */
+    public static String key(String query) {
+        char[] key = normalize(query).toCharArray();
+        for (int i = 0; i < key.length; i++)
+            key[i] = fold(key[i]);
+
+        return new String(key);
+    }
+
+    /**
+     * Normalizes a query so that it is searched for the same way however it was typed, folding
+     * full-width ASCII and half-width katakana, and removing surrounding spaces
+     * @param query query as typed
+     * @return normalized query
+     */
+    public static String normalize(String query) {
+        StringBuilder sb = new StringBuilder(query.length());
+
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+
+            if (c >= FULL_WIDTH_FIRST && c <= FULL_WIDTH_LAST) {
+                c = (char) (c - OFFSET_WIDTH);
+            } else if (c == SPACE_IDEOGRAPHIC) {
+                c = ' ';
+            } else if (c >= HALF_WIDTH_FIRST && c <= HALF_WIDTH_LAST) {
+                int last = sb.length() - 1;
+                char voiced = last < 0 ? 0 : voice(sb.charAt(last), c);
+                if (voiced != 0) {
+                    sb.setCharAt(last, voiced);
+                    continue;
+                }
+
+                c = HALF_WIDTH.charAt(c - HALF_WIDTH_FIRST);
+            }
+
+            sb.append(c);
+        }
+
+        return sb.toString().trim();
+    }
+
+    /**
+     * Combines a katakana with the half-width sound mark after it
+     * @param kana katakana before the mark
+     * @param mark character after the katakana
+     * @return voiced or semi-voiced katakana, or 0 if they cannot be combined
+     */
+    private static char voice(char kana, char mark) {
+        if (mark == MARK_VOICED) {
+            if (kana == KATAKANA_U)
+                return KATAKANA_VU;
+            if (VOICEABLE.indexOf(kana) != -1)
+                return (char) (kana + 1);
+        } else if (mark == MARK_SEMI_VOICED && SEMI_VOICEABLE.indexOf(kana) != -1) {
+            return (char) (kana + 2);
+        }
+
+        return 0;
+    }
+}
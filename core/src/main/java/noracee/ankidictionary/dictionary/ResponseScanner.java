@@ -0,0 +1,123 @@
+package noracee.ankidictionary.dictionary;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Finds the region of an HTML response enclosed by a tag directly in its bytes, so that only the
+ * region is decoded instead of the entire page. Matches like the pattern
+ * <code>&lt;tag&gt;\R([\s\S]+)\R&lt;/tag&gt;</code> would, from the first opening tag followed by a
+ * line break to the last closing tag preceded by one, for charsets where ASCII characters are
+ * single bytes
+ */
+
+public class ResponseScanner {
+    private byte[] close;
+    private byte[] open;
+
+    /**
+     * @param tag name of the tag enclosing the region, e.g. pre
+     */
+    public ResponseScanner(String tag) {
+        open = ascii("<" + tag + ">");
+        close = ascii("</" + tag + ">");
+    }
+
+    /**
+     * Decodes the region enclosed by the tag
+     * @param body raw response body
+     * @param charset charset of the body
+     * @return decoded region, or null if the body has no such region
+     * @throws UnsupportedEncodingException if the charset is not supported
+     */
+    public String extract(byte[] body, String charset) throws UnsupportedEncodingException {
+        int start = findStart(body);
+        if (start == -1)
+            return null;
+
+        int end = findEnd(body, start);
+        if (end == -1)
+            return null;
+
+        return new String(body, start, end - start, charset);
+    }
+
+    /**
+     * Finds the start of the region, right after the first opening tag followed by a line break
+     * @return start of the region, or -1 if there is none
+     */
+    private int findStart(byte[] body) {
+        int from = 0;
+        int tag;
+        while ((tag = indexOf(body, open, from)) != -1) {
+            int start = tag + open.length;
+            if (start < body.length && isLineBreak(body[start])) {
+                // \R matches CRLF as a single line break
+                if (body[start] == '\r' && start + 1 < body.length && body[start + 1] == '\n')
+                    return start + 2;
+                return start + 1;
+            }
+
+            from = start;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Finds the end of the region, right before the line break preceding the last closing tag,
+     * leaving at least one byte in the region
+     * @return end of the region, or -1 if there is none
+     */
+    private int findEnd(byte[] body, int start) {
+        for (int tag = lastIndexOf(body, close, body.length - close.length); tag > start;
+             tag = lastIndexOf(body, close, tag - 1)) {
+            // the region is greedy, so only the last byte of a CRLF is left out of it
+            if (isLineBreak(body[tag - 1]) && tag - 1 > start)
+                return tag - 1;
+        }
+
+        return -1;
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) s.charAt(i);
+
+        return bytes;
+    }
+
+    private static int indexOf(byte[] body, byte[] target, int from) {
+        for (int i = from; i <= body.length - target.length; i++) {
+            if (matches(body, target, i))
+                return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Checks if a byte is a single byte line break matched by \R
+     */
+    private static boolean isLineBreak(byte b) {
+        return b == '\n' || b == '\r' || b == 0x0B || b == '\f';
+    }
+
+    private static int lastIndexOf(byte[] body, byte[] target, int from) {
+        for (int i = Math.min(from, body.length - target.length); i >= 0; i--) {
+            if (matches(body, target, i))
+                return i;
+        }
+
+        return -1;
+    }
+
+    private static boolean matches(byte[] body, byte[] target, int offset) {
+        for (int i = 0; i < target.length; i++) {
+            if (body[offset + i] != target[i])
+                return false;
+        }
+
+        return true;
+    }
+}
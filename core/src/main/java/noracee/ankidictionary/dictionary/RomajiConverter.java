@@ -0,0 +1,335 @@
+package noracee.ankidictionary.dictionary;
+
+/**
+ * Converts romaji into kana one character at a time, as it is typed, by walking a trie of the
+ * romaji spellings and emitting the kana of the longest spelling matched, so that queries typed
+ * without an IME are looked up as kana. Words typed all in upper case become katakana and any
+ * other word becomes hiragana, e.g. "KANA" becomes カナ while "kana" and "Kana" become かな, where a
+ * word is the romaji typed between any other characters. The kana of a word are katakana until a
+ * letter in lower case is typed in it, which turns them back into hiragana. Only a few characters
+ * are ever pending, so each character typed takes amortized constant work
+ */
+
+public class RomajiConverter {
+    /// Characters of the romaji spellings, which are the only ones held in the trie
+    private static final char FIRST = 'a';
+    private static final char APOSTROPHE = '\'';
+    // Letters and the apostrophe
+    private static final int CAPACITY_CHILDREN = 27;
+
+    /// Characters handled outside the trie
+    // Romaji of the moraic nasal, which only becomes ん once no other kana can start with it
+    private static final char N = 'n';
+    // Typed after a vowel to lengthen it
+    private static final char HYPHEN = '-';
+    private static final char LONG_VOWEL = 'ー';
+    // Small tsu, typed by doubling the consonant after it
+    private static final String SOKUON = "っ";
+    // Vowels, which are never doubled into a small tsu
+    private static final String VOWELS = "aiueo";
+
+    /// Ranges of the kana that are converted
+    private static final char HIRAGANA_FIRST = 'ぁ';
+    private static final char HIRAGANA_LAST  = 'ゖ';
+    private static final char KATAKANA_FIRST = 'ァ';
+    private static final char KATAKANA_LAST  = 'ヺ';
+    private static final int  OFFSET_KANA    = 0x60;
+
+    // Romaji spellings followed by their hiragana
+    private static final String[] SPELLINGS = {
+            "a", "あ", "i", "い", "u", "う", "e", "え", "o", "お",
+            "ka", "か", "ki", "き", "ku", "く", "ke", "け", "ko", "こ",
+            "ca", "か", "cu", "く", "co", "こ", "qa", "くぁ", "qi", "くぃ", "qe", "くぇ", "qo", "くぉ",
+            "sa", "さ", "si", "し", "shi", "し", "su", "す", "se", "せ", "so", "そ",
+            "ta", "た", "ti", "ち", "chi", "ち", "tu", "つ", "tsu", "つ", "te", "て", "to", "と",
+            "na", "な", "ni", "に", "nu", "ぬ", "ne", "ね", "no", "の",
+            "ha", "は", "hi", "ひ", "hu", "ふ", "fu", "ふ", "he", "へ", "ho", "ほ",
+            "ma", "ま", "mi", "み", "mu", "む", "me", "め", "mo", "も",
+            "ya", "や", "yu", "ゆ", "ye", "いぇ", "yo", "よ",
+            "ra", "ら", "ri", "り", "ru", "る", "re", "れ", "ro", "ろ",
+            "la", "ら", "li", "り", "lu", "る", "le", "れ", "lo", "ろ",
+            "wa", "わ", "wi", "うぃ", "we", "うぇ", "wo", "を",
+            "n", "ん", "n'", "ん",
+            "ga", "が", "gi", "ぎ", "gu", "ぐ", "ge", "げ", "go", "ご",
+            "za", "ざ", "zi", "じ", "ji", "じ", "zu", "ず", "ze", "ぜ", "zo", "ぞ",
+            "da", "だ", "di", "ぢ", "du", "づ", "de", "で", "do", "ど",
+            "ba", "ば", "bi", "び", "bu", "ぶ", "be", "べ", "bo", "ぼ",
+            "pa", "ぱ", "pi", "ぴ", "pu", "ぷ", "pe", "ぺ", "po", "ぽ",
+            "va", "ゔぁ", "vi", "ゔぃ", "vu", "ゔ", "ve", "ゔぇ", "vo", "ゔぉ",
+            "fa", "ふぁ", "fi", "ふぃ", "fe", "ふぇ", "fo", "ふぉ",
+            "she", "しぇ", "che", "ちぇ", "je", "じぇ", "tsa", "つぁ",
+            "thi", "てぃ", "dhi", "でぃ", "twu", "とぅ", "dwu", "どぅ",
+            // small kana
+            "xa", "ぁ", "xi", "ぃ", "xu", "ぅ", "xe", "ぇ", "xo", "ぉ",
+            "xya", "ゃ", "xyu", "ゅ", "xyo", "ょ", "xwa", "ゎ", "xtu", "っ", "xtsu", "っ",
+            "lya", "ゃ", "lyu", "ゅ", "lyo", "ょ", "lwa", "ゎ", "ltu", "っ", "ltsu", "っ"};
+
+    // Consonants of the contracted sounds spelled with y, followed by the i kana of their row
+    private static final String[] CONTRACTED = {
+            "k", "き", "g", "ぎ", "s", "し", "z", "じ", "j", "じ", "t", "ち", "c", "ち", "d", "ぢ",
+            "n", "に", "h", "ひ", "f", "ふ", "b", "び", "p", "ぴ", "m", "み", "r", "り", "l", "り"};
+    // Contracted sounds spelled without y, followed by the i kana of their row
+    private static final String[] CONTRACTED_H = {"sh", "し", "ch", "ち", "j", "じ"};
+    // Vowels of the contracted sounds followed by their small kana
+    private static final String[] CONTRACTED_VOWELS = {"a", "ゃ", "u", "ゅ", "o", "ょ"};
+
+    private static final Node ROOT = new Node();
+
+    static {
+        for (int i = 0; i < SPELLINGS.length; i += 2)
+            add(SPELLINGS[i], SPELLINGS[i + 1]);
+
+        for (int i = 0; i < CONTRACTED.length; i += 2) {
+            for (int j = 0; j < CONTRACTED_VOWELS.length; j += 2)
+                add(CONTRACTED[i] + "y" + CONTRACTED_VOWELS[j],
+                        CONTRACTED[i + 1] + CONTRACTED_VOWELS[j + 1]);
+        }
+
+        for (int i = 0; i < CONTRACTED_H.length; i += 2) {
+            for (int j = 0; j < CONTRACTED_VOWELS.length; j += 2)
+                add(CONTRACTED_H[i] + CONTRACTED_VOWELS[j],
+                        CONTRACTED_H[i + 1] + CONTRACTED_VOWELS[j + 1]);
+        }
+    }
+
+    // Kana and other characters converted so far
+    private StringBuilder converted;
+    // Romaji typed since the last kana, as typed
+    private StringBuilder pending;
+    // Node of the trie reached by the pending romaji
+    private Node node;
+    // Whether the pending n follows an ん typed as nn, and only completes it
+    private boolean doubledN;
+    // Whether a letter of the current word was typed in lower case, so that it becomes hiragana
+    private boolean lowerCase;
+    // Start of the current word in the converted text
+    private int word;
+
+    public RomajiConverter() {
+        converted = new StringBuilder();
+        pending = new StringBuilder();
+        node = ROOT;
+    }
+
+    /**
+     * Converts a whole text at once, completing any romaji left at its end
+     * @param text text to convert
+     * @return converted text
+     */
+    public static String convert(String text) {
+        RomajiConverter converter = new RomajiConverter();
+        for (int i = 0; i < text.length(); i++)
+            converter.type(text.charAt(i));
+
+        return converter.complete();
+    }
+
+    /**
+     * Completes the romaji still pending, as when no more characters are typed
+     * @return converted text
+     */
+    public String complete() {
+        while (pending.length() > 0)
+            resolve();
+
+        return converted.toString();
+    }
+
+    /**
+     * Retrieves the text converted so far, followed by the romaji still pending as typed
+     * @return text to show
+     */
+    public String getText() {
+        return converted.toString() + pending;
+    }
+
+    /**
+     * Forgets all text typed so far
+     */
+    public void reset() {
+        converted.setLength(0);
+        pending.setLength(0);
+        node = ROOT;
+        doubledN = false;
+        lowerCase = false;
+        word = 0;
+    }
+
+    /**
+     * Converts the next character typed
+     * @param c character typed
+     */
+    public void type(char c) {
+        char lower = Character.toLowerCase(c);
+        if (!lowerCase && Character.isLowerCase(c) && Node.index(c) != -1)
+            toHiragana();
+
+        Node child = node.get(lower);
+
+        if (child != null) {
+            pending.append(c);
+            node = child;
+
+            // no longer spelling can follow, so the kana is known
+            if (!node.parent)
+                emit(node.kana);
+            return;
+        }
+
+        if (pending.length() == 0) {
+            // not romaji, so it is kept as typed and ends the word
+            if (lower == HYPHEN && converted.length() > 0 && isKana(last())) {
+                converted.append(LONG_VOWEL);
+            } else {
+                converted.append(c);
+                lowerCase = false;
+                word = converted.length();
+            }
+            return;
+        }
+
+        if (isSokuon(lower)) {
+            append(SOKUON);
+            pending.setLength(0);
+            pending.append(c);
+            node = ROOT.get(lower);
+            return;
+        }
+
+        // nn is typed for ん before a vowel, so the second n is dropped if no kana follows it
+        boolean doubled = node == ROOT.get(N) && lower == N;
+        resolve();
+        type(c);
+        doubledN = doubled;
+    }
+
+    /**
+     * Appends kana to the converted text, as katakana while the word is all in upper case
+     * @param kana hiragana to append
+     */
+    private void append(String kana) {
+        for (int i = 0; i < kana.length(); i++) {
+            char k = kana.charAt(i);
+            if (!lowerCase && k >= HIRAGANA_FIRST && k <= HIRAGANA_LAST)
+                k = (char) (k + OFFSET_KANA);
+            converted.append(k);
+        }
+    }
+
+    /**
+     * Appends the kana of the pending romaji to the converted text, and clears the pending romaji
+     * @param kana hiragana of the pending romaji
+     */
+    private void emit(String kana) {
+        append(kana);
+        pending.setLength(0);
+        node = ROOT;
+        doubledN = false;
+    }
+
+    private static boolean isKana(char c) {
+        return (c >= HIRAGANA_FIRST && c <= HIRAGANA_LAST)
+                || (c >= KATAKANA_FIRST && c <= KATAKANA_LAST) || c == LONG_VOWEL;
+    }
+
+    /**
+     * Determines whether or not a character doubles the single consonant pending, as in kk or tch
+     */
+    private boolean isSokuon(char c) {
+        if (pending.length() != 1)
+            return false;
+
+        char consonant = Character.toLowerCase(pending.charAt(0));
+        return consonant != N && VOWELS.indexOf(consonant) == -1
+                && (consonant == c || (consonant == 't' && c == 'c'));
+    }
+
+    private char last() {
+        return converted.charAt(converted.length() - 1);
+    }
+
+    /**
+     * Resolves the pending romaji once no longer spelling can match it, by emitting the kana of
+     * the spelling matched so far, or otherwise keeping its first character as typed and typing
+     * the rest again
+     */
+    private void resolve() {
+        if (node.kana != null) {
+            if (doubledN) {
+                pending.setLength(0);
+                node = ROOT;
+                doubledN = false;
+            } else {
+                emit(node.kana);
+            }
+            return;
+        }
+
+        String rest = pending.substring(1);
+        converted.append(pending.charAt(0));
+        pending.setLength(0);
+        node = ROOT;
+        doubledN = false;
+
+        for (int i = 0; i < rest.length(); i++)
+            type(rest.charAt(i));
+    }
+
+    /**
+     * Marks the current word as typed in lower case, turning the katakana converted in it so far
+     * back into hiragana
+     */
+    private void toHiragana() {
+        lowerCase = true;
+
+        for (int i = word; i < converted.length(); i++) {
+            char k = converted.charAt(i);
+            if (k >= KATAKANA_FIRST && k <= KATAKANA_LAST && k - OFFSET_KANA <= HIRAGANA_LAST)
+                converted.setCharAt(i, (char) (k - OFFSET_KANA));
+        }
+    }
+
+    /**
+     * Adds a spelling to the trie
+     * @param romaji spelling in lower case
+     * @param kana hiragana of the spelling
+     */
+    private static void add(String romaji, String kana) {
+        Node node = ROOT;
+        for (int i = 0; i < romaji.length(); i++) {
+            char c = romaji.charAt(i);
+            Node child = node.get(c);
+            if (child == null) {
+                child = new Node();
+                node.children[Node.index(c)] = child;
+                node.parent = true;
+            }
+            node = child;
+        }
+
+        node.kana = kana;
+    }
+
+    /**
+     * Node of the trie, holding the kana of the spelling ending there if there is one
+     */
+    private static class Node {
+        private Node[] children = new Node[CAPACITY_CHILDREN];
+        private boolean parent;
+        private String kana;
+
+        private static int index(char c) {
+            if (c == APOSTROPHE)
+                return CAPACITY_CHILDREN - 1;
+            if (c >= FIRST && c < FIRST + CAPACITY_CHILDREN - 1)
+                return c - FIRST;
+
+            return -1;
+        }
+
+        private Node get(char c) {
+            int index = index(c);
+            return index == -1 ? null : children[index];
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package noracee.ankidictionary.dictionary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Splits a sentence into words with the local dictionary index, by building a lattice of every
+ * substring of the sentence that is a word, or a conjugation of one, and choosing the path through
+ * it with the lowest cost. Every substring is looked up in a single batch, and each word costs less
+ * the longer it is, if it is a priority word, and if it is a particle or auxiliary, down to a least
+ * cost that keeps every word adding to the cost, so that the path favours few, common words.
+ * Characters no word covers are kept together as unknown segments
+ */
+
+public class Segmenter {
+    /**
+     * Word of a sentence
+     */
+    public static class Segment {
+        private List<String> lines;
+        private String text;
+        private String word;
+
+        Segment(String text, String word, List<String> lines) {
+            this.text = text;
+            this.word = word;
+            this.lines = lines;
+        }
+
+        /**
+         * Retrieves the raw EDICT lines of the entries of the word
+         * @return lines, or an empty list if the segment is unknown
+         */
+        public List<String> getLines() {
+            return lines;
+        }
+
+        /**
+         * Retrieves the word as it appears in the sentence
+         * @return text of the segment
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * Retrieves the dictionary form of the word
+         * @return dictionary form, or null if the segment is unknown
+         */
+        public String getWord() {
+            return word;
+        }
+    }
+
+    /// Costs of the lattice
+    // Cost of every word, so that fewer words are preferred
+    private static final int COST_WORD           = 1000;
+    // Least cost of a word once reduced, so that every word still adds to the cost of a path
+    private static final int COST_MINIMUM        = 100;
+    // Cost of every character no word covers, which is more than any word
+    private static final int COST_UNKNOWN        = 3000;
+    // Reduction for every character of a word after the first
+    private static final int BONUS_LENGTH        = 300;
+    // Reduction for priority words, marked with (P)
+    private static final int BONUS_PRIORITY      = 200;
+    // Reduction for particles and auxiliaries, which join the other words of a sentence
+    private static final int BONUS_PARTICLE      = 300;
+    // Added to a single kana that is not a particle nor an auxiliary, e.g. て for hand
+    private static final int PENALTY_KANA        = 300;
+    // Added to a conjugated word, so that a word in its dictionary form is preferred
+    private static final int PENALTY_DEINFLECTED = 100;
+
+    /// Part of speech codes that lower the cost of a word, where the copula is marked aux-v
+    private static final String[] CODES_PARTICLE = {"prt", "aux", "aux-v", "aux-adj"};
+    private static final String[] CODES_PRIORITY = {"P"};
+
+    private static final char HIRAGANA_FIRST = 'ぁ';
+    private static final char HIRAGANA_LAST  = 'ゖ';
+    private static final char KATAKANA_FIRST = 'ァ';
+    private static final char KATAKANA_LAST  = 'ヺ';
+    private static final char LONG_VOWEL     = 'ー';
+
+    // Longest word looked up, in characters
+    private static final int LIMIT_LENGTH = 12;
+
+    // ids of the codes that lower the cost of a word
+    private int[] codesParticle;
+    private int[] codesPriority;
+
+    private Deinflector deinflector;
+    private DictionaryCodes codes;
+    private DictionaryIndex index;
+
+    /**
+     * @param index local dictionary index to look words up in
+     * @param codes code classification to check the parts of speech of the entries with
+     * @param deinflector deinflector to look conjugated words up with
+     */
+    public Segmenter(DictionaryIndex index, DictionaryCodes codes, Deinflector deinflector) {
+        this.index = index;
+        this.codes = codes;
+        this.deinflector = deinflector;
+
+        codesParticle = codes.findAll(CODES_PARTICLE);
+        codesPriority = codes.findAll(CODES_PRIORITY);
+    }
+
+    /**
+     * Splits a sentence into words
+     * @param sentence normalized sentence
+     * @return segments of the sentence, in order
+     */
+    public List<Segment> segment(String sentence) {
+        int length = sentence.length();
+        if (length == 0)
+            return Collections.emptyList();
+
+        // every substring and its dictionary forms, looked up at once
+        Set<String> words = new LinkedHashSet<>();
+        List<List<Deinflector.Form>> forms = new ArrayList<>();
+        for (int start = 0; start < length; start++) {
+            int last = Math.min(length, start + LIMIT_LENGTH);
+            for (int end = start + 1; end <= last; end++) {
+                String text = sentence.substring(start, end);
+                words.add(text);
+
+                List<Deinflector.Form> deinflected = isHiragana(sentence.charAt(end - 1))
+                        ? deinflector.deinflect(text)
+                        : Collections.<Deinflector.Form>emptyList();
+                for (Deinflector.Form form : deinflected)
+                    words.add(form.getWord());
+                forms.add(deinflected);
+            }
+        }
+
+        Map<String, List<String>> found = index.lookupExact(words);
+
+        // edges by the position they start at, in the same order as the substrings
+        List<List<Edge>> edges = new ArrayList<>(length);
+        int substring = 0;
+        for (int start = 0; start < length; start++) {
+            List<Edge> starting = new ArrayList<>();
+            edges.add(starting);
+
+            int last = Math.min(length, start + LIMIT_LENGTH);
+            for (int end = start + 1; end <= last; end++, substring++) {
+                // katakana words are loanwords, which are never split into other words
+                if (isKatakana(sentence, start - 1) && isKatakana(sentence, start)
+                        || isKatakana(sentence, end - 1) && isKatakana(sentence, end))
+                    continue;
+
+                String text = sentence.substring(start, end);
+
+                List<String> lines = found.get(text);
+                if (lines != null)
+                    starting.add(new Edge(end, text, lines, cost(text, lines, false)));
+
+                for (Deinflector.Form form : forms.get(substring)) {
+                    lines = matching(form, found.get(form.getWord()));
+                    if (lines != null)
+                        starting.add(new Edge(end, form.getWord(), lines,
+                                cost(text, lines, true)));
+                }
+            }
+        }
+
+        return bestPath(sentence, edges);
+    }
+
+    /**
+     * Chooses the path through the lattice with the lowest cost, where any character can also be
+     * skipped as an unknown segment
+     */
+    private List<Segment> bestPath(String sentence, List<List<Edge>> edges) {
+        int length = sentence.length();
+
+        // lowest cost to reach each position and the edge reaching it, or null for an unknown one
+        long[] costs = new long[length + 1];
+        Edge[] previous = new Edge[length + 1];
+        int[] starts = new int[length + 1];
+        for (int i = 1; i <= length; i++)
+            costs[i] = Long.MAX_VALUE;
+
+        for (int start = 0; start < length; start++) {
+            long cost = costs[start];
+
+            if (cost + COST_UNKNOWN < costs[start + 1]) {
+                costs[start + 1] = cost + COST_UNKNOWN;
+                previous[start + 1] = null;
+                starts[start + 1] = start;
+            }
+
+            for (Edge edge : edges.get(start)) {
+                if (cost + edge.cost < costs[edge.end]) {
+                    costs[edge.end] = cost + edge.cost;
+                    previous[edge.end] = edge;
+                    starts[edge.end] = start;
+                }
+            }
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        int end = length;
+        while (end > 0) {
+            int start = starts[end];
+            Edge edge = previous[end];
+
+            if (edge != null) {
+                segments.add(new Segment(sentence.substring(start, end), edge.word, edge.lines));
+            } else {
+                // joins consecutive unknown characters
+                while (start > 0 && previous[start] == null)
+                    start = starts[start];
+                segments.add(new Segment(sentence.substring(start, end), null,
+                        Collections.<String>emptyList()));
+            }
+
+            end = start;
+        }
+
+        Collections.reverse(segments);
+        return segments;
+    }
+
+    /**
+     * Determines whether or not a line has any of some codes
+     */
+    private boolean contains(String line, int[] ids) {
+        for (int open = line.indexOf('('); open != -1; open = line.indexOf('(', open + 1)) {
+            int close = line.indexOf(')', open + 1);
+            if (close == -1)
+                return false;
+
+            int start = open + 1;
+            for (int i = start; i <= close; i++) {
+                if (i == close || line.charAt(i) == ',') {
+                    int code = codes.find(line, start, i);
+                    for (int id : ids) {
+                        if (id == code)
+                            return true;
+                    }
+                    start = i + 1;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Calculates the cost of a word, from the entry of the word that costs the least, which is
+     * never less than {@link #COST_MINIMUM} however long the word is
+     * @param text word as it appears in the sentence
+     * @param lines raw EDICT lines of the entries of the word
+     * @param deinflected whether the word is conjugated in the sentence
+     */
+    private int cost(String text, List<String> lines, boolean deinflected) {
+        int best = Integer.MAX_VALUE;
+        for (String line : lines) {
+            int cost = COST_WORD - BONUS_LENGTH * (text.length() - 1);
+            if (contains(line, codesPriority))
+                cost -= BONUS_PRIORITY;
+
+            if (contains(line, codesParticle))
+                cost -= BONUS_PARTICLE;
+            else if (text.length() == 1 && isHiragana(text.charAt(0)))
+                cost += PENALTY_KANA;
+
+            best = Math.min(best, Math.max(cost, COST_MINIMUM));
+        }
+
+        return deinflected ? best + PENALTY_DEINFLECTED : best;
+    }
+
+    private static boolean isHiragana(char c) {
+        return c >= HIRAGANA_FIRST && c <= HIRAGANA_LAST;
+    }
+
+    /**
+     * Determines whether or not the character at a position of the sentence is katakana, where
+     * positions outside the sentence are not
+     */
+    private static boolean isKatakana(String sentence, int position) {
+        if (position < 0 || position >= sentence.length())
+            return false;
+
+        char c = sentence.charAt(position);
+        return (c >= KATAKANA_FIRST && c <= KATAKANA_LAST) || c == LONG_VOWEL;
+    }
+
+    /**
+     * Keeps the entries of a dictionary form that are of its class
+     * @return lines kept, or null if there are none
+     */
+    private List<String> matching(Deinflector.Form form, List<String> lines) {
+        if (lines == null)
+            return null;
+
+        List<String> matching = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            if (deinflector.matches(form, line))
+                matching.add(line);
+        }
+
+        return matching.isEmpty() ? null : matching;
+    }
+
+    /**
+     * Word of the lattice, ending at a position of the sentence
+     */
+    private static class Edge {
+        private int cost;
+        private int end;
+        private List<String> lines;
+        private String word;
+
+        Edge(int end, String word, List<String> lines, int cost) {
+            this.end = end;
+            this.word = word;
+            this.lines = lines;
+            this.cost = cost;
+        }
+    }
+}
@@ -0,0 +1,524 @@
+package noracee.ankidictionary.entity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import noracee.ankidictionary.dictionary.DictionaryCodes;
+
+/**
+ * Contains a parsed dictionary query. Kanjis, readings, definition sets and parts of speech are
+ * kept as lists, and the fields of the Anki note and the tags are joined from them once when they
+ * are first retrieved, until the vocabulary is changed again. Tags from the dictionary codes are
+ * kept as a sorted array of code ids, and only tags typed in by the user are kept as Strings
+ */
+
+public class Vocabulary {
+    // Index of respective fields in the Anki note
+    private static final int INDEX_KANJI   = 0;
+    private static final int INDEX_READING = 1;
+    private static final int INDEX_DEFS    = 2;
+    private static final int INDEX_POS     = 3;
+    private static final int INDEX_EXAMPLE = 4;
+
+    // Number of fields in the Anki note
+    private static final int SIZE_FIELDS   = 5;
+
+    // Initial capacity of the lists, as most vocabularies have a single kanji and few definitions
+    private static final int CAPACITY_LITERALS = 1;
+    private static final int CAPACITY_SETS     = 4;
+    private static final int CAPACITY_TAGS     = 4;
+
+    // Delimiter to separate entities
+    private static final String DELIMITER     = "::";
+    private static final String DELIMITER_TAG = "　";
+
+    private int defCount;
+    private int posCount;
+
+    private String category;
+    private String query;
+    private String raw;
+
+    // parts of each field, where a null field has no parts
+    private List<String> kanjis;
+    private List<String> readings;
+    private List<String> definitions;
+    private List<String> partsOfSpeech;
+
+    // fields joined from their parts, valid unless their bit in stale is set
+    private String[] fields;
+    private int stale;
+
+    // classification naming the code tags, or null if the vocabulary has none
+    private DictionaryCodes codes;
+    // sorted ids of the codes the vocabulary is tagged with, or null if there are none
+    private int[] codeTags;
+    private int codeTagCount;
+    // tags that are not codes, or null if there are none
+    private List<String> customTags;
+    // tags joined as a String, or null until they are retrieved again
+    private String tagsString;
+
+    private List<Example> examples;
+
+    public Vocabulary(String query, String raw) {
+        this(query, raw, null);
+    }
+
+    /**
+     * @param query query used to search for the vocabulary
+     * @param raw raw response received from the servers
+     * @param codes code classification naming the code tags added to the vocabulary
+     */
+    public Vocabulary(String query, String raw, DictionaryCodes codes) {
+        this.query = query;
+        this.raw = raw;
+        this.codes = codes;
+
+        defCount = 0;
+        posCount = 0;
+
+        kanjis = new ArrayList<>(CAPACITY_LITERALS);
+        readings = new ArrayList<>(CAPACITY_LITERALS);
+        definitions = new ArrayList<>(CAPACITY_SETS);
+        partsOfSpeech = new ArrayList<>(CAPACITY_SETS);
+
+        examples = null;
+        fields = new String[SIZE_FIELDS];
+        stale = 0;
+    }
+
+    /**
+     * Creates a copy of a vocabulary that can be edited without affecting the original
+     * @param vocabulary vocabulary to copy
+     */
+    public Vocabulary(Vocabulary vocabulary) {
+        query = vocabulary.query;
+        raw = vocabulary.raw;
+        category = vocabulary.category;
+
+        defCount = vocabulary.defCount;
+        posCount = vocabulary.posCount;
+
+        kanjis = new ArrayList<>(vocabulary.kanjis);
+        readings = new ArrayList<>(vocabulary.readings);
+        definitions = new ArrayList<>(vocabulary.definitions);
+        partsOfSpeech = new ArrayList<>(vocabulary.partsOfSpeech);
+
+        examples = vocabulary.examples == null ? null : new ArrayList<>(vocabulary.examples);
+        fields = vocabulary.fields.clone();
+        stale = vocabulary.stale;
+        codes = vocabulary.codes;
+        codeTags = vocabulary.codeTags == null ? null : vocabulary.codeTags.clone();
+        codeTagCount = vocabulary.codeTagCount;
+        customTags = vocabulary.customTags == null ? null : new ArrayList<>(vocabulary.customTags);
+        tagsString = vocabulary.tagsString;
+    }
+
+    /**
+     * Retrieves all the fields of the Anki note as a String array, with empty fields for those
+     * that are not set
+     * @return String array of all the fields
+     */
+    public String[] getFields() {
+        String[] note = new String[SIZE_FIELDS];
+        for (int i = 0; i < note.length; i++) {
+            String field = getField(i);
+            note[i] = field == null ? "" : field;
+        }
+
+        return note;
+    }
+
+    /**
+     * Retrieves the category to which this vocabulary belongs to
+     * @return category
+     */
+    public String getCategory() {
+        return category;
+    }
+
+    /**
+     * Sets the category to which this vocabulary belongs to
+     * @param category category
+     */
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    /**
+     * Retrieves the defintions in this vocabulary
+     * @return definitions in this vocabulary
+     */
+    public String getDefinitions() {
+        return getField(INDEX_DEFS);
+    }
+
+    /**
+     * Adds a definition set to this vocabulary
+     * @param definition definition set
+     */
+    public void addDefinition(String definition) {
+        if (definition == null || definition.isEmpty())
+            return;
+
+        definitions.add(definition);
+        stale |= 1 << INDEX_DEFS;
+
+        defCount++;
+    }
+
+    /**
+     * Sets the entire definition set of this vocabulary
+     * @param defs entire definition set
+     */
+    public void setDefinitions(String defs) {
+        set(definitions, INDEX_DEFS, defs);
+    }
+
+    /**
+     * Retrieves the example set for this vocabulary
+     * @return example
+     */
+    public String getExample() {
+        return fields[INDEX_EXAMPLE];
+    }
+
+    /**
+     * Retrieves the list of {@link Example Example} associated with this vocabulary
+     * @return list of {@link Example Example}
+     */
+    public List<Example> getExamples() {
+        return examples;
+    }
+
+    /**
+     * Adds an {@link Example Example} to the list
+     * @param example {@link Example Example} to add
+     */
+    public void addExample(Example example) {
+        if (examples == null)
+            examples = new ArrayList<>();
+        examples.add(example);
+    }
+
+    /**
+     * Sets the entire list of {@link Example Example} associated with this vocabulary
+     * @param examples list of {@link Example Example}, or null if there are none
+     */
+    public void setExamples(List<Example> examples) {
+        this.examples = examples;
+    }
+
+    /**
+     * Sets the example that will be used in the note for Anki
+     * @param index index of the {@link Example Example} in the list
+     */
+    public void setExample(int index) {
+        fields[INDEX_EXAMPLE] = examples.get(index).toString();
+    }
+
+    /**
+     * Sets the example that will be used in the note for Anki
+     * @param example example as a String
+     */
+    public void setExample(String example) {
+        fields[INDEX_EXAMPLE] = example;
+    }
+
+    /**
+     * Retrieves the kanji writing of this vocabulary
+     * @return kanji writing
+     */
+    public String getKanji() {
+        return getField(INDEX_KANJI);
+    }
+
+    /**
+     * Adds a kanji writing to this vocabulary
+     * @param kanji kanji writing
+     */
+    public void addKanji(String kanji) {
+        kanjis.add(kanji);
+        stale |= 1 << INDEX_KANJI;
+    }
+
+    /**
+     * Sets the kanji writing of this vocabulary
+     * @param kanji kanji writing
+     */
+    public void setKanji(String kanji) {
+        set(kanjis, INDEX_KANJI, kanji);
+    }
+
+    /**
+     * Retrieves the parts of speech in this vocabulary
+     * @return parts of speech
+     */
+    public String getPartsOfSpeech() {
+        String pos = getField(INDEX_POS);
+        if (pos == null)
+            return "";
+        return pos;
+    }
+
+    /**
+     * Adds a part of speech set to this vocabulary
+     * @param pos part of speech set
+     */
+    public void addPartsOfSpeech(String pos) {
+        if (pos == null|| pos.isEmpty())
+            return;
+
+        if (partsOfSpeech.isEmpty()) {
+            setPartsOfSpeech(pos);
+            posCount++;
+        } else {
+            /*
+            In cases where there are more definition sets than part of speech sets, add the
+            appropriate number of empty sets, otherwise the set is appended to the last one
+             */
+            boolean padded = false;
+            while (posCount < defCount) {
+                partsOfSpeech.add("");
+                posCount++;
+                padded = true;
+            }
+
+            int last = partsOfSpeech.size() - 1;
+            partsOfSpeech.set(last, padded ? pos : partsOfSpeech.get(last) + pos);
+            stale |= 1 << INDEX_POS;
+        }
+    }
+
+    /**
+     * Sets the entire part of speech set of this vocabulary
+     * @param pos entire part of speech set
+     */
+    public void setPartsOfSpeech(String pos) {
+        set(partsOfSpeech, INDEX_POS, pos);
+    }
+
+    /**
+     * Retrieves the query used to search for this vocabulary
+     * @return query
+     */
+    public String getQuery() { return query; }
+
+    /**
+     * Retrieves the raw response received from the servers
+     * @return raw response
+     */
+    public String getRaw() {
+        return raw;
+    }
+
+    /**
+     * Retrieves the hiragana or katakana reading of this vocabulary
+     * @return hiragana or katakana reading
+     */
+    public String getReading() {
+        String reading = getField(INDEX_READING);
+        if (reading == null)
+            return getField(INDEX_KANJI);
+        return reading;
+    }
+
+    /**
+     * Adds a reading to this vocabulary
+     * @param reading reading
+     */
+    public void addReading(String reading) {
+        readings.add(reading);
+        stale |= 1 << INDEX_READING;
+    }
+
+    /**
+     * Sets the hiragana or katakana reading of this vocabulary
+     * @param reading hiragana or katakana reading
+     */
+    public void setReading(String reading) {
+        set(readings, INDEX_READING, reading);
+    }
+
+    /**
+     * Retrieves the complete tags set for this vocabulary including the category, e.g. to add the
+     * note to Anki
+     * @return new set of the complete tags
+     */
+    public HashSet<String> getTags() {
+        HashSet<String> tags = new HashSet<>(getTagNames());
+        if (category != null)
+            tags.add(category);
+
+        return tags;
+    }
+
+    /**
+     * Retrieves the tags for this vocabulary as a String
+     * @return tags as a String
+     */
+    public String getTagsString() {
+        if (tagsString != null)
+            return tagsString;
+
+        StringBuilder sb = new StringBuilder();
+
+        // checks if tag is the first in the set, otherwise append delimiter
+        boolean first = true;
+        for (String tag : getTagNames()) {
+            if (first) {
+                sb.append(tag);
+                first = false;
+            } else {
+                sb.append(DELIMITER_TAG).append(tag);
+            }
+        }
+
+        tagsString = sb.toString().trim();
+        return tagsString;
+    }
+
+    /**
+     * Adds a code tag to this vocabulary, named by the code classification it was created with
+     * @param code id of the code
+     */
+    public void addTag(int code) {
+        if (codeTags == null)
+            codeTags = new int[CAPACITY_TAGS];
+
+        int index = Arrays.binarySearch(codeTags, 0, codeTagCount, code);
+        if (index >= 0)
+            return;
+
+        index = -index - 1;
+        if (codeTagCount == codeTags.length)
+            codeTags = Arrays.copyOf(codeTags, codeTagCount * 2);
+
+        System.arraycopy(codeTags, index, codeTags, index + 1, codeTagCount - index);
+        codeTags[index] = code;
+        codeTagCount++;
+        tagsString = null;
+    }
+
+    /**
+     * Adds a tag that is not a code to this vocabulary
+     * @param tag tag
+     */
+    public void addTag(String tag) {
+        if (tag == null || tag.isEmpty())
+            return;
+
+        if (customTags == null)
+            customTags = new ArrayList<>(CAPACITY_TAGS);
+
+        if (!customTags.contains(tag)) {
+            customTags.add(tag);
+            tagsString = null;
+        }
+    }
+
+    /**
+     * Sets the entire tag set for this vocabulary, e.g. as edited by the user
+     * @param tagsRaw entire tag set as a String
+     */
+    public void setTags(String tagsRaw) {
+        codeTagCount = 0;
+        customTags = null;
+        tagsString = null;
+
+        for (String tag : tagsRaw.split(DELIMITER_TAG))
+            addTag(tag);
+    }
+
+    /**
+     * Retrieves a field of the Anki note, joining it from its parts if it has changed since it
+     * was last retrieved
+     * @param index index of the field
+     * @return field, or null if it is not set
+     */
+    private String getField(int index) {
+        int bit = 1 << index;
+        if ((stale & bit) == 0)
+            return fields[index];
+
+        List<String> parts = getParts(index);
+        String field;
+        if (parts.isEmpty()) {
+            field = null;
+        } else if (parts.size() == 1) {
+            field = parts.get(0);
+        } else {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < parts.size(); i++) {
+                if (i > 0)
+                    sb.append(DELIMITER);
+                sb.append(parts.get(i));
+            }
+            field = sb.toString();
+        }
+
+        fields[index] = field;
+        stale &= ~bit;
+        return field;
+    }
+
+    /**
+     * Retrieves the parts a field is joined from
+     * @param index index of the field, other than the example
+     * @return parts of the field
+     */
+    private List<String> getParts(int index) {
+        switch (index) {
+            case INDEX_KANJI:
+                return kanjis;
+            case INDEX_READING:
+                return readings;
+            case INDEX_DEFS:
+                return definitions;
+            default:
+                return partsOfSpeech;
+        }
+    }
+
+    /**
+     * Retrieves the names of the tags, without duplicates, with the code tags first
+     * @return names of the tags
+     */
+    private List<String> getTagNames() {
+        int customCount = customTags == null ? 0 : customTags.size();
+        List<String> names = new ArrayList<>(codeTagCount + customCount);
+
+        for (int i = 0; i < codeTagCount; i++) {
+            // several codes may share a name
+            String name = codes.getName(codeTags[i]);
+            if (!names.contains(name))
+                names.add(name);
+        }
+
+        for (int i = 0; i < customCount; i++) {
+            String tag = customTags.get(i);
+            if (!names.contains(tag))
+                names.add(tag);
+        }
+
+        return names;
+    }
+
+    /**
+     * Replaces the parts of a field with the entire field
+     * @param parts parts of the field
+     * @param index index of the field
+     * @param field entire field, or null to clear it
+     */
+    private void set(List<String> parts, int index, String field) {
+        parts.clear();
+        if (field != null)
+            parts.add(field);
+
+        fields[index] = field;
+        stale &= ~(1 << index);
+    }
+}
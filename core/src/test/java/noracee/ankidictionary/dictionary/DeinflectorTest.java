@@ -0,0 +1,152 @@
+package noracee.ankidictionary.dictionary;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the dictionary forms conjugated words are turned back into, and the entries each form
+ * matches
+ */
+
+public class DeinflectorTest {
+    private static final String FILE_CODES = "/dictionary_codes.txt";
+
+    private static Deinflector deinflector;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        InputStream is = DeinflectorTest.class.getResourceAsStream(FILE_CODES);
+        assertNotNull("missing resource " + FILE_CODES, is);
+
+        deinflector = new Deinflector(new DictionaryCodes(is));
+    }
+
+    @Test
+    public void keepsEmptyWordsEmpty() {
+        assertTrue(deinflector.deinflect("").isEmpty());
+    }
+
+    @Test
+    public void keepsDictionaryFormsOut() {
+        assertFalse(words("食べる").contains("食べる"));
+        assertTrue(words("漢字").isEmpty());
+    }
+
+    @Test
+    public void deinflectsIchidanVerbs() {
+        assertContains("食べました", "食べる");
+        assertContains("食べた", "食べる");
+        assertContains("食べない", "食べる");
+        assertContains("食べて", "食べる");
+        assertContains("食べよう", "食べる");
+    }
+
+    @Test
+    public void deinflectsGodanVerbs() {
+        assertContains("書きます", "書く");
+        assertContains("書いた", "書く");
+        assertContains("泳いで", "泳ぐ");
+        assertContains("話さない", "話す");
+        assertContains("待った", "待つ");
+        assertContains("読んだ", "読む");
+        assertContains("帰れば", "帰る");
+    }
+
+    @Test
+    public void deinflectsChainsOfConjugations() {
+        List<String> words = words("食べられなかった");
+        assertTrue(words.toString(), words.contains("食べられない"));
+        assertTrue(words.toString(), words.contains("食べられる"));
+        assertTrue(words.toString(), words.contains("食べる"));
+        assertTrue(words.indexOf("食べられない") < words.indexOf("食べる"));
+
+        assertContains("書いています", "書く");
+        assertContains("読んでいる", "読む");
+        assertContains("書かせられる", "書く");
+    }
+
+    @Test
+    public void deinflectsIrregularVerbs() {
+        assertContains("行った", "行く");
+        assertContains("いって", "いく");
+        assertContains("来なかった", "来る");
+        assertContains("きました", "くる");
+        assertContains("勉強しました", "勉強する");
+        assertContains("勉強しました", "勉強");
+        assertContains("勉強している", "勉強する");
+    }
+
+    @Test
+    public void deinflectsAdjectives() {
+        assertContains("高くない", "高い");
+        assertContains("高かった", "高い");
+        assertContains("高くなかった", "高い");
+        assertContains("高くて", "高い");
+        assertContains("高ければ", "高い");
+    }
+
+    @Test
+    public void matchesEntriesOfTheClass() {
+        String v1 = "食べる [たべる] /(v1,vt) to eat/";
+        String v5 = "書く [かく] /(v5k,vt) to write/";
+        String vs = "勉強 [べんきょう] /(n,vs) study/";
+        String adj = "高い [たかい] /(adj-i) high/";
+
+        Deinflector.Form eat = form("食べた", "食べる");
+        assertTrue(deinflector.matches(eat, v1));
+        assertFalse(deinflector.matches(eat, v5));
+
+        Deinflector.Form write = form("書いた", "書く");
+        assertTrue(deinflector.matches(write, v5));
+        assertFalse(deinflector.matches(write, "書く [かく] /(v5s,vt) to write/"));
+        assertFalse(deinflector.matches(write, v1));
+
+        assertTrue(deinflector.matches(form("勉強しました", "勉強"), vs));
+        assertFalse(deinflector.matches(form("勉強しました", "勉強"), adj));
+        assertTrue(deinflector.matches(form("高かった", "高い"), adj));
+        assertFalse(deinflector.matches(form("高かった", "高い"), v1));
+    }
+
+    @Test
+    public void matchesNoEntryWithoutCodes() {
+        assertFalse(deinflector.matches(form("食べた", "食べる"), "食べる [たべる] /to eat/"));
+        assertFalse(deinflector.matches(form("食べた", "食べる"), "食べる [たべる] /(v1/"));
+    }
+
+    private static void assertContains(String word, String dictionary) {
+        List<String> words = words(word);
+        assertTrue(word + " into " + words, words.contains(dictionary));
+    }
+
+    private static Deinflector.Form form(String word, String dictionary) {
+        for (Deinflector.Form form : deinflector.deinflect(word)) {
+            if (form.getWord().equals(dictionary))
+                return form;
+        }
+
+        fail(word + " is not deinflected into " + dictionary);
+        return null;
+    }
+
+    private static List<String> words(String word) {
+        List<String> words = new ArrayList<>();
+        for (Deinflector.Form form : deinflector.deinflect(word))
+            words.add(form.getWord());
+
+        assertEquals("forms of " + word + " are distinct", words.size(),
+                new HashSet<>(words).size());
+        return words;
+    }
+}
@@ -0,0 +1,139 @@
+package noracee.ankidictionary.dictionary;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Looks words up in a small index compiled from the EDICT lines of the segmenter fixture. After a
+ * change to the fixture or to the index layout, the index is compiled again with, from the root
+ * of the project,
+ * ./gradlew :indexer:compileDictionary -Pedict=$PWD/core/src/test/resources/segmenter/edict.txt
+ * -Pindex=$PWD/core/src/test/resources/segmenter/dictionary.idx
+ */
+
+public class DictionaryIndexTest {
+    /// Resources of the fixture
+    static final String FILE_EDICT = "/segmenter/edict.txt";
+    static final String FILE_INDEX = "/segmenter/dictionary.idx";
+
+    private static DictionaryIndex index;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        index = load();
+    }
+
+    @Test
+    public void holdsEveryEntryOfTheFixture() throws IOException {
+        int entries = 0;
+        InputStream is = resource(FILE_EDICT);
+        try {
+            for (String line : new String(readAll(is), "UTF-8").split("\n")) {
+                if (!line.startsWith("　？？？") && !line.isEmpty())
+                    entries++;
+            }
+        } finally {
+            is.close();
+        }
+
+        assertEquals(entries, index.getEntryCount());
+    }
+
+    @Test
+    public void looksUpExactKanjiAndReadings() {
+        Map<String, List<String>> found = index.lookupExact(Arrays.asList("日本", "にほん"));
+
+        assertEquals(Arrays.asList("日本", "にほん"), new ArrayList<>(found.keySet()));
+        assertEquals(Collections.singletonList("日本(P)"), headwords(found.get("日本")));
+        assertEquals(found.get("日本"), found.get("にほん"));
+    }
+
+    @Test
+    public void looksUpExactWordsByKey() {
+        Map<String, List<String>> found = index.lookupExact(Arrays.asList("ソフト", "そふと"));
+
+        assertEquals(Collections.singletonList("ソフト(P)"), headwords(found.get("ソフト")));
+        assertEquals(found.get("ソフト"), found.get("そふと"));
+    }
+
+    @Test
+    public void leavesOutQueriesWithoutEntries() {
+        Map<String, List<String>> found = index.lookupExact(Arrays.asList("日本人", "本", "xyz"));
+
+        assertEquals(Collections.singletonList("本"), new ArrayList<>(found.keySet()));
+        assertTrue(index.lookupExact(Collections.<String>emptyList()).isEmpty());
+    }
+
+    @Test
+    public void looksUpAlternativeKanji() {
+        Map<String, List<String>> found = index.lookupExact(Arrays.asList("鮨", "喰べる", "いく"));
+
+        assertEquals(Collections.singletonList("寿司(P);鮨(P);鮓(P)"), headwords(found.get("鮨")));
+        assertEquals(Collections.singletonList("食べる(P);喰べる(iK)"),
+                headwords(found.get("喰べる")));
+        assertEquals(Collections.singletonList("行く(P);逝く;往く"), headwords(found.get("いく")));
+    }
+
+    @Test
+    public void looksUpExactEntriesBeforePrefixedOnes() {
+        List<String> lines = index.lookup("日本");
+
+        assertEquals(Arrays.asList("日本(P)", "日本語(P)", "日本語能力試験"), headwords(lines));
+    }
+
+    /**
+     * Loads the index of the fixture
+     */
+    static DictionaryIndex load() throws IOException {
+        InputStream is = resource(FILE_INDEX);
+        try {
+            return new DictionaryIndex(ByteBuffer.wrap(readAll(is)));
+        } finally {
+            is.close();
+        }
+    }
+
+    static InputStream resource(String name) {
+        InputStream is = DictionaryIndexTest.class.getResourceAsStream(name);
+        assertNotNull("missing resource " + name, is);
+
+        return is;
+    }
+
+    /**
+     * Keeps the kanji, or the reading of kana words, of each line
+     */
+    private static List<String> headwords(List<String> lines) {
+        assertNotNull(lines);
+
+        List<String> headwords = new ArrayList<>(lines.size());
+        for (String line : lines)
+            headwords.add(line.substring(0, line.indexOf(' ')));
+
+        return headwords;
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = is.read(buffer)) != -1)
+            os.write(buffer, 0, read);
+
+        return os.toByteArray();
+    }
+}
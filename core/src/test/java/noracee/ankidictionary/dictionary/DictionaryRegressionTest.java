@@ -0,0 +1,312 @@
+package noracee.ankidictionary.dictionary;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import noracee.ankidictionary.entity.Vocabulary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Replays the recorded dictionary responses of the corpus through the path the app parses them
+ * with, checking the vocabularies against the golden snapshots, and the parse time and allocated
+ * bytes against the budgets. The budgets are kept close to the measured values against a baseline
+ * measured in the same run, which only reads the lines of each response: parse times as ratios to
+ * it, so that they hold on any machine, and allocated bytes as the bytes allocated over it. After
+ * an intended change to the output, the snapshots are rewritten with
+ * ./gradlew :core:test -PregressionRecord
+ */
+
+public class DictionaryRegressionTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /// Resources of the suite
+    private static final String FILE_BUDGETS = "/regression/budgets.properties";
+    private static final String FILE_CODES   = "/dictionary_codes.txt";
+    private static final String FILE_CORPUS  = "/regression/corpus.txt";
+    private static final String FILE_GOLDEN  = "/regression/golden.txt";
+
+    /// Budgets against the baseline, keyed as in the budgets file
+    private static final String BUDGET_ALLOCATED = "replay.allocated.bytes";
+    private static final String BUDGET_P50       = "parse.p50.ratio";
+    private static final String BUDGET_P99       = "parse.p99.ratio";
+
+    /// System properties set by the build
+    // Whether the snapshots are rewritten instead of checked
+    private static final String PROPERTY_RECORD = "regression.record";
+    // Snapshot file in the sources to rewrite
+    private static final String PROPERTY_GOLDEN = "regression.golden";
+
+    // Starts the query of each response in the corpus and snapshot files
+    private static final String PREFIX_QUERY = "### ";
+    // Snapshot of a response without vocabularies
+    private static final String NONE = "(none)";
+    // Separates the fields of a vocabulary in a snapshot
+    private static final char SEPARATOR_FIELDS = '\t';
+
+    /// Replays of the corpus, so that the parser is compiled before it is measured
+    private static final int ROUNDS_WARMUP   = 50;
+    private static final int ROUNDS_MEASURED = 20;
+
+    private static DictionaryCodes codes;
+    private static Map<String, byte[]> corpus;
+    private static Properties budgets;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        InputStream is = resource(FILE_CODES);
+        codes = new DictionaryCodes(is);
+
+        corpus = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : readBlocks(FILE_CORPUS).entrySet())
+            corpus.put(entry.getKey(), entry.getValue().getBytes(UTF_8));
+
+        budgets = new Properties();
+        is = resource(FILE_BUDGETS);
+        try {
+            budgets.load(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    @Test
+    public void matchesGoldenSnapshots() throws IOException {
+        Map<String, String> snapshots = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> entry : corpus.entrySet())
+            snapshots.put(entry.getKey(), snapshot(parse(entry.getKey(), entry.getValue())));
+
+        if (Boolean.getBoolean(PROPERTY_RECORD)) {
+            record(snapshots);
+            return;
+        }
+
+        Map<String, String> golden = readBlocks(FILE_GOLDEN);
+        assertEquals("queries with a snapshot", golden.keySet(), snapshots.keySet());
+        for (Map.Entry<String, String> entry : snapshots.entrySet())
+            assertEquals(entry.getKey(), golden.get(entry.getKey()), entry.getValue());
+    }
+
+    @Test
+    public void staysWithinAllocationBudget() throws IOException {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported()
+                && allocations.isThreadAllocatedMemoryEnabled());
+
+        for (int i = 0; i < ROUNDS_WARMUP; i++)
+            replay();
+
+        long thread = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(thread);
+        replay();
+        long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+
+        before = allocations.getThreadAllocatedBytes(thread);
+        for (byte[] body : corpus.values())
+            readLines(body);
+        long baseline = allocations.getThreadAllocatedBytes(thread) - before;
+
+        long budget = Long.parseLong(budgets.getProperty(BUDGET_ALLOCATED));
+        assertTrue("allocated " + (allocated - baseline) + " bytes over the baseline replaying "
+                + "the corpus, over the budget of " + budget, allocated - baseline <= budget);
+    }
+
+    @Test
+    public void staysWithinLatencyBudget() throws IOException {
+        for (int i = 0; i < ROUNDS_WARMUP; i++) {
+            replay();
+            for (byte[] body : corpus.values())
+                readLines(body);
+        }
+
+        // the baseline of each response is measured right after it is parsed, so that both see
+        // the same state of the machine
+        long[] samples = new long[corpus.size() * ROUNDS_MEASURED];
+        long[] baselines = new long[samples.length];
+        int sample = 0;
+        for (int i = 0; i < ROUNDS_MEASURED; i++) {
+            for (Map.Entry<String, byte[]> entry : corpus.entrySet()) {
+                long start = System.nanoTime();
+                parse(entry.getKey(), entry.getValue());
+                samples[sample] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                readLines(entry.getValue());
+                baselines[sample++] = System.nanoTime() - start;
+            }
+        }
+
+        Arrays.sort(samples);
+        Arrays.sort(baselines);
+        assertRatio("p50 parse time", percentile(samples, 50), percentile(baselines, 50),
+                BUDGET_P50);
+        assertRatio("p99 parse time", percentile(samples, 99), percentile(baselines, 99),
+                BUDGET_P99);
+    }
+
+    /**
+     * Checks that a measurement is within its budget
+     * @param name name of the measurement
+     * @param measured measured value
+     * @param baseline value of the baseline for the same measurement
+     * @param key key of the budget, as a ratio to the baseline
+     */
+    private static void assertRatio(String name, long measured, long baseline, String key) {
+        double ratio = (double) measured / Math.max(baseline, 1);
+
+        double budget = Double.parseDouble(budgets.getProperty(key));
+        assertTrue(String.format("%s of %d is %.2f times the baseline of %d, over the budget of "
+                + "%.2f", name, measured, ratio, baseline, budget), ratio <= budget);
+    }
+
+    /**
+     * Parses a response as the app does once it is downloaded
+     * @param query query the response was requested for
+     * @param body response body
+     * @return vocabularies parsed, or null if the response has none
+     */
+    private static List<Vocabulary> parse(String query, byte[] body) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(body), UTF_8));
+
+        return new EdictResponseReader(codes).read(reader, query, null);
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int rank = (int) Math.ceil(sorted.length * percentile / 100.0) - 1;
+        return sorted[Math.max(rank, 0)];
+    }
+
+    /**
+     * Reads a file of blocks, each started by a line with the query of the block
+     * @return contents of each block by query, without the final line break
+     */
+    private static Map<String, String> readBlocks(String name) throws IOException {
+        Map<String, String> blocks = new LinkedHashMap<>();
+
+        BufferedReader br = new BufferedReader(new InputStreamReader(resource(name), UTF_8));
+        try {
+            String query = null;
+            StringBuilder sb = new StringBuilder();
+
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.startsWith(PREFIX_QUERY)) {
+                    if (query != null)
+                        blocks.put(query, sb.toString());
+
+                    query = line.substring(PREFIX_QUERY.length());
+                    sb.setLength(0);
+                } else {
+                    if (sb.length() > 0)
+                        sb.append('\n');
+                    sb.append(line);
+                }
+            }
+
+            if (query != null)
+                blocks.put(query, sb.toString());
+        } finally {
+            br.close();
+        }
+
+        return blocks;
+    }
+
+    /**
+     * Reads every line of a response without parsing it, as the baseline of the budgets
+     * @return number of characters read, so that the reading is not optimized away
+     */
+    private static long readLines(byte[] body) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(body), UTF_8));
+
+        long length = 0;
+        String line;
+        while ((line = reader.readLine()) != null)
+            length += line.length();
+
+        return length;
+    }
+
+    /**
+     * Rewrites the snapshot file in the sources
+     * @param snapshots snapshot of each query
+     */
+    private static void record(Map<String, String> snapshots) throws IOException {
+        String path = System.getProperty(PROPERTY_GOLDEN);
+        assertNotNull("the snapshot file to rewrite is given by " + PROPERTY_GOLDEN, path);
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(new File(path)), UTF_8);
+        try {
+            for (Map.Entry<String, String> entry : snapshots.entrySet()) {
+                writer.write(PREFIX_QUERY + entry.getKey() + '\n');
+                writer.write(entry.getValue() + '\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Parses every response of the corpus once
+     */
+    private static void replay() throws IOException {
+        for (Map.Entry<String, byte[]> entry : corpus.entrySet())
+            parse(entry.getKey(), entry.getValue());
+    }
+
+    private static InputStream resource(String name) {
+        InputStream is = DictionaryRegressionTest.class.getResourceAsStream(name);
+        assertNotNull("missing resource " + name, is);
+
+        return is;
+    }
+
+    /**
+     * Describes the vocabularies of a response with one line for each, holding the fields of the
+     * Anki note and the tags
+     */
+    private static String snapshot(List<Vocabulary> vocabularies) {
+        if (vocabularies == null)
+            return NONE;
+
+        StringBuilder sb = new StringBuilder();
+        for (Vocabulary vocabulary : vocabularies) {
+            if (sb.length() > 0)
+                sb.append('\n');
+
+            sb.append(vocabulary.getKanji()).append(SEPARATOR_FIELDS)
+                    .append(vocabulary.getReading()).append(SEPARATOR_FIELDS)
+                    .append(vocabulary.getDefinitions()).append(SEPARATOR_FIELDS)
+                    .append(vocabulary.getPartsOfSpeech()).append(SEPARATOR_FIELDS)
+                    .append(vocabulary.getTagsString());
+        }
+
+        return sb.toString();
+    }
+}
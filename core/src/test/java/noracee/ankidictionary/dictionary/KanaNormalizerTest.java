@@ -0,0 +1,107 @@
+package noracee.ankidictionary.dictionary;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the same word typed with different widths, kana and cases is normalized into the
+ * same query and key, and matched the same way within a line
+ */
+
+public class KanaNormalizerTest {
+    @Test
+    public void combinesHalfWidthSoundMarks() {
+        assertEquals("ガギグゲゴ", KanaNormalizer.normalize("ｶﾞｷﾞｸﾞｹﾞｺﾞ"));
+        assertEquals("パピプペポ", KanaNormalizer.normalize("ﾊﾟﾋﾟﾌﾟﾍﾟﾎﾟ"));
+        assertEquals("ヴ", KanaNormalizer.normalize("ｳﾞ"));
+        assertEquals("テレビ", KanaNormalizer.normalize("ﾃﾚﾋﾞ"));
+    }
+
+    @Test
+    public void keepsSoundMarksThatCannotBeCombined() {
+        assertEquals("ア゛", KanaNormalizer.normalize("ｱﾞ"));
+        assertEquals("カ゜", KanaNormalizer.normalize("ｶﾟ"));
+        assertEquals("゛", KanaNormalizer.normalize("ﾞ"));
+    }
+
+    @Test
+    public void foldsHalfWidthKatakana() {
+        assertEquals("カタカナ", KanaNormalizer.normalize("ｶﾀｶﾅ"));
+        assertEquals("キャッシュ", KanaNormalizer.normalize("ｷｬｯｼｭ"));
+        assertEquals("コーヒー", KanaNormalizer.normalize("ｺｰﾋｰ"));
+        assertEquals("「ヲ」。", KanaNormalizer.normalize("｢ｦ｣｡"));
+    }
+
+    @Test
+    public void foldsFullWidthAscii() {
+        assertEquals("Kanji", KanaNormalizer.normalize("Ｋａｎｊｉ"));
+        assertEquals("123!?", KanaNormalizer.normalize("１２３！？"));
+        assertEquals("a~z", KanaNormalizer.normalize("ａ～ｚ"));
+    }
+
+    @Test
+    public void removesSurroundingSpaces() {
+        assertEquals("漢字", KanaNormalizer.normalize("　漢字　"));
+        assertEquals("漢字", KanaNormalizer.normalize(" 漢字\t"));
+        assertEquals("漢 字", KanaNormalizer.normalize("漢　字"));
+        assertEquals("", KanaNormalizer.normalize("　"));
+        assertEquals("", KanaNormalizer.normalize(" 　 "));
+        assertEquals("", KanaNormalizer.normalize(""));
+    }
+
+    @Test
+    public void keepsNormalizedQueries() {
+        assertEquals("漢字", KanaNormalizer.normalize("漢字"));
+        assertEquals("かんじ", KanaNormalizer.normalize("かんじ"));
+        assertEquals("カンジ", KanaNormalizer.normalize("カンジ"));
+    }
+
+    @Test
+    public void sharesKeysAcrossKanaWidthsAndCases() {
+        String key = KanaNormalizer.key("かたかな");
+        assertEquals("かたかな", key);
+        assertEquals(key, KanaNormalizer.key("カタカナ"));
+        assertEquals(key, KanaNormalizer.key("ｶﾀｶﾅ"));
+        assertEquals(key, KanaNormalizer.key("　カタカナ　"));
+
+        assertEquals("がっこう", KanaNormalizer.key("ｶﾞｯｺｳ"));
+        assertEquals("ゔ", KanaNormalizer.key("ｳﾞ"));
+        assertEquals("ゝゞ", KanaNormalizer.key("ヽヾ"));
+        assertEquals("kanji", KanaNormalizer.key("ＫＡＮＪＩ"));
+        assertEquals("kanji", KanaNormalizer.key("Kanji"));
+        assertEquals("", KanaNormalizer.key("　"));
+    }
+
+    @Test
+    public void keepsKatakanaWithoutHiraganaInKeys() {
+        assertEquals("ヷー", KanaNormalizer.key("ヷー"));
+        assertEquals("漢字", KanaNormalizer.key("漢字"));
+    }
+
+    @Test
+    public void findsQueriesByMatchForm() {
+        String line = "片仮名 [カタカナ] /(n) katakana/";
+
+        assertEquals(0, KanaNormalizer.indexOf(line, "片仮名", 0, line.length()));
+        assertEquals(5, KanaNormalizer.indexOf(line, "かたかな", 0, line.length()));
+        assertEquals(5, KanaNormalizer.indexOf(line, "カタカナ", 0, line.length()));
+        assertEquals(7, KanaNormalizer.indexOf(line, "かな", 0, line.length()));
+        assertEquals(16, KanaNormalizer.indexOf(line, "KATAKANA", 0, line.length()));
+        assertEquals(16, KanaNormalizer.indexOf(line, "ｋａｔａｋａｎａ", 0, line.length()));
+        assertEquals(-1, KanaNormalizer.indexOf(line, "ひらがな", 0, line.length()));
+    }
+
+    @Test
+    public void findsQueriesOnlyWithinRange() {
+        String line = "かな かな";
+
+        assertEquals(0, KanaNormalizer.indexOf(line, "カナ", 0, line.length()));
+        assertEquals(3, KanaNormalizer.indexOf(line, "カナ", 1, line.length()));
+        assertEquals(-1, KanaNormalizer.indexOf(line, "カナ", 1, 4));
+        assertEquals(3, KanaNormalizer.indexOf(line, "カナ", 3, 5));
+        assertEquals(-1, KanaNormalizer.indexOf(line, "カナ", 4, 5));
+        assertEquals(-1, KanaNormalizer.indexOf(line, "がな", 0, line.length()));
+        assertEquals(0, KanaNormalizer.indexOf(line, "", 0, line.length()));
+    }
+}
@@ -0,0 +1,143 @@
+package noracee.ankidictionary.dictionary;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the kana romaji is converted into, whether it is converted at once or as it is typed
+ */
+
+public class RomajiConverterTest {
+    @Test
+    public void convertsSyllables() {
+        assertEquals("かな", RomajiConverter.convert("kana"));
+        assertEquals("とうきょう", RomajiConverter.convert("toukyou"));
+        assertEquals("しんぶん", RomajiConverter.convert("shinbun"));
+        assertEquals("ちゃわん", RomajiConverter.convert("chawan"));
+        assertEquals("じしょ", RomajiConverter.convert("jisho"));
+        assertEquals("つくえ", RomajiConverter.convert("tsukue"));
+        assertEquals("ふぁいる", RomajiConverter.convert("fairu"));
+    }
+
+    @Test
+    public void convertsMoraicNasal() {
+        assertEquals("かんじ", RomajiConverter.convert("kanji"));
+        assertEquals("ほん", RomajiConverter.convert("hon"));
+        assertEquals("きねん", RomajiConverter.convert("kinen"));
+        assertEquals("きんえん", RomajiConverter.convert("kin'en"));
+        assertEquals("きんねん", RomajiConverter.convert("kinnen"));
+        assertEquals("かんい", RomajiConverter.convert("kan'i"));
+        assertEquals("こんにちは", RomajiConverter.convert("konnichiha"));
+        assertEquals("みんな", RomajiConverter.convert("minna"));
+        assertEquals("ほん", RomajiConverter.convert("honn"));
+    }
+
+    @Test
+    public void convertsSokuon() {
+        assertEquals("きって", RomajiConverter.convert("kitte"));
+        assertEquals("まっちゃ", RomajiConverter.convert("matcha"));
+        assertEquals("まっちゃ", RomajiConverter.convert("maccha"));
+        assertEquals("ざっし", RomajiConverter.convert("zasshi"));
+        assertEquals("もっと", RomajiConverter.convert("motto"));
+        assertEquals("いっぱい", RomajiConverter.convert("ippai"));
+        assertEquals("ああ", RomajiConverter.convert("aa"));
+    }
+
+    @Test
+    public void convertsWordsAllInUpperCaseIntoKatakana() {
+        assertEquals("カナ", RomajiConverter.convert("KANA"));
+        assertEquals("トウキョウ", RomajiConverter.convert("TOUKYOU"));
+        assertEquals("キッテ", RomajiConverter.convert("KITTE"));
+        assertEquals("コンピュータ", RomajiConverter.convert("KONPYU-TA"));
+        assertEquals("ヴァ", RomajiConverter.convert("VA"));
+    }
+
+    @Test
+    public void convertsWordsInMixedCaseIntoHiragana() {
+        assertEquals("かな", RomajiConverter.convert("Kana"));
+        assertEquals("とうきょう", RomajiConverter.convert("Toukyou"));
+        assertEquals("とうきょう", RomajiConverter.convert("TOUkyou"));
+        assertEquals("あさ", RomajiConverter.convert("Asa"));
+        assertEquals("きって", RomajiConverter.convert("Kitte"));
+        assertEquals("かな", RomajiConverter.convert("kaNA"));
+    }
+
+    @Test
+    public void decidesTheCaseOfEachWord() {
+        assertEquals("カナ かな", RomajiConverter.convert("KANA kana"));
+        assertEquals("かな カナ", RomajiConverter.convert("Kana KANA"));
+        assertEquals("テレビ・ばんぐみ", RomajiConverter.convert("TEREBI・bangumi"));
+    }
+
+    @Test
+    public void lengthensVowelsWithHyphens() {
+        assertEquals("らーめん", RomajiConverter.convert("ra-men"));
+        assertEquals("ラーメン", RomajiConverter.convert("RA-MEN"));
+        assertEquals("-", RomajiConverter.convert("-"));
+        assertEquals("1-2", RomajiConverter.convert("1-2"));
+    }
+
+    @Test
+    public void keepsOtherCharactersAsTyped() {
+        assertEquals("漢字", RomajiConverter.convert("漢字"));
+        assertEquals("かんじ 123", RomajiConverter.convert("kanji 123"));
+        assertEquals("x", RomajiConverter.convert("x"));
+        assertEquals("", RomajiConverter.convert(""));
+    }
+
+    @Test
+    public void showsPendingRomajiWhileTyping() {
+        RomajiConverter converter = new RomajiConverter();
+
+        type(converter, "K");
+        assertEquals("K", converter.getText());
+        type(converter, "A");
+        assertEquals("カ", converter.getText());
+        type(converter, "n");
+        assertEquals("かn", converter.getText());
+        type(converter, "a");
+        assertEquals("かな", converter.getText());
+        type(converter, "k");
+        assertEquals("かなk", converter.getText());
+        assertEquals("かなk", converter.complete());
+    }
+
+    @Test
+    public void showsMoraicNasalOnceItIsKnown() {
+        RomajiConverter converter = new RomajiConverter();
+
+        type(converter, "kan");
+        assertEquals("かn", converter.getText());
+        type(converter, "n");
+        assertEquals("かんn", converter.getText());
+        type(converter, "a");
+        assertEquals("かんな", converter.getText());
+    }
+
+    @Test
+    public void convertsAgainAfterAnEdit() {
+        RomajiConverter converter = new RomajiConverter();
+        type(converter, "kanj");
+        assertEquals("かんj", converter.getText());
+
+        // an edit within the query makes the whole query typed again, kana included
+        converter.reset();
+        assertEquals("", converter.getText());
+        type(converter, "かんji");
+        assertEquals("かんじ", converter.getText());
+
+        converter.reset();
+        type(converter, "カナKA");
+        assertEquals("カナカ", converter.getText());
+
+        converter.reset();
+        type(converter, "カナka");
+        assertEquals("カナか", converter.getText());
+    }
+
+    private static void type(RomajiConverter converter, String text) {
+        for (int i = 0; i < text.length(); i++)
+            converter.type(text.charAt(i));
+    }
+}
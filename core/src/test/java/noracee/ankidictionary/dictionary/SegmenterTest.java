@@ -0,0 +1,106 @@
+package noracee.ankidictionary.dictionary;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Splits sentences into words with the small index of the segmenter fixture, checking each
+ * segment as it appears in the sentence and the dictionary form it was looked up with
+ */
+
+public class SegmenterTest {
+    private static final String FILE_CODES = "/dictionary_codes.txt";
+
+    // Separates the segments of a sentence in the expected segmentations
+    private static final String SEPARATOR = "|";
+
+    private static Segmenter segmenter;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        InputStream is = DictionaryIndexTest.resource(FILE_CODES);
+        DictionaryCodes codes = new DictionaryCodes(is);
+
+        segmenter = new Segmenter(DictionaryIndexTest.load(), codes, new Deinflector(codes));
+    }
+
+    @Test
+    public void splitsParticlesFromWords() {
+        assertSegments("私は寿司を食べました", "私|は|寿司|を|食べました", "私|は|寿司|を|食べる");
+        assertSegments("京都で本を買った", "京都|で|本|を|買った", "京都|で|本|を|買う");
+    }
+
+    @Test
+    public void prefersLongerWords() {
+        assertSegments("東京都に行った", "東京都|に|行った", "東京都|に|行く");
+        assertSegments("私は大学生です", "私|は|大学生|です", "私|は|大学生|です");
+        assertSegments("日本語能力試験を受けた", "日本語能力試験|を|受けた",
+                "日本語能力試験|を|受ける");
+    }
+
+    @Test
+    public void prefersFewerWords() {
+        assertSegments("昨日本を読んでいる", "昨日|本|を|読んでいる", "昨日|本|を|読む");
+        assertSegments("毎日日本語を勉強しています", "毎日|日本語|を|勉強しています",
+                "毎日|日本語|を|勉強");
+    }
+
+    @Test
+    public void keepsKatakanaWordsWhole() {
+        assertSegments("ソフトを買う", "ソフト|を|買う", "ソフト|を|買う");
+        assertSegments("ソフトクリームを食べた", "ソフトクリーム|を|食べた", "ソフトクリーム|を|食べる");
+    }
+
+    @Test
+    public void joinsUnknownCharacters() {
+        List<Segmenter.Segment> segments = segmenter.segment("私はXYZです");
+
+        assertEquals("私|は|XYZ|です", join(segments, false));
+        Segmenter.Segment unknown = segments.get(2);
+        assertNull(unknown.getWord());
+        assertTrue(unknown.getLines().isEmpty());
+    }
+
+    @Test
+    public void keepsTheEntriesOfEachWord() {
+        List<Segmenter.Segment> segments = segmenter.segment("手を");
+
+        assertEquals("手|を", join(segments, false));
+        assertEquals(1, segments.get(0).getLines().size());
+        assertTrue(segments.get(0).getLines().get(0).startsWith("手(P) [て(P)]"));
+    }
+
+    @Test
+    public void splitsNothingOutOfEmptySentences() {
+        assertTrue(segmenter.segment("").isEmpty());
+    }
+
+    private static void assertSegments(String sentence, String texts, String words) {
+        List<Segmenter.Segment> segments = segmenter.segment(sentence);
+
+        assertEquals(sentence, texts, join(segments, false));
+        assertEquals(sentence, words, join(segments, true));
+    }
+
+    /**
+     * Joins the texts or the dictionary forms of the segments
+     */
+    private static String join(List<Segmenter.Segment> segments, boolean words) {
+        StringBuilder sb = new StringBuilder();
+        for (Segmenter.Segment segment : segments) {
+            if (sb.length() > 0)
+                sb.append(SEPARATOR);
+            sb.append(words ? segment.getWord() : segment.getText());
+        }
+
+        return sb.toString();
+    }
+}
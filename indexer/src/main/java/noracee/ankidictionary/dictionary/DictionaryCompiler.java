@@ -0,0 +1,203 @@
+package noracee.ankidictionary.dictionary;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import noracee.ankidictionary.entity.Vocabulary;
+
+/**
+ * Compiles an EDICT text dump into the dictionary index shipped with the app.
+ *
+ * Usage: DictionaryCompiler &lt;edict&gt; &lt;charset&gt; &lt;codes&gt; &lt;index&gt; &lt;report&gt;
+ */
+
+public class DictionaryCompiler {
+    // Number of arguments expected
+    private static final int COUNT_ARGS = 5;
+
+    // Prefix of the header line of EDICT dumps
+    private static final String PREFIX_HEADER = "　？？？";
+    // Prefix of the entry sequence field of EDICT2 dumps, which the app never shows
+    private static final String PREFIX_SEQUENCE = "/EntL";
+
+    // Encloses codes
+    private static final char CODE_OPEN  = '(';
+    private static final char CODE_CLOSE = ')';
+    // Encloses the readings
+    private static final char READING_OPEN  = '[';
+    private static final char READING_CLOSE = ']';
+    // Separates kanji and reading sets
+    private static final char SEPARATOR_SET = ';';
+    // Separates kanji and readings from definitions
+    private static final String SEPARATOR_PARTS = " /";
+
+    private int skipped;
+
+    private DictionaryIndexWriter writer;
+    private EdictTokenizer tokenizer;
+
+    private DictionaryCompiler(DictionaryCodes codes) {
+        skipped = 0;
+        writer = new DictionaryIndexWriter();
+        tokenizer = new EdictTokenizer(codes);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != COUNT_ARGS) {
+            System.err.println("Usage: DictionaryCompiler <edict> <charset> <codes> <index> <report>");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+
+        File edict = new File(args[0]);
+        File index = new File(args[3]);
+        File report = new File(args[4]);
+
+        DictionaryCompiler compiler = new DictionaryCompiler(
+                new DictionaryCodes(new FileInputStream(args[2])));
+        compiler.read(edict, args[1]);
+        compiler.write(index);
+
+        long millis = (System.nanoTime() - start) / 1000000;
+        String summary = String.format(Locale.US,
+                "entries=%d%nskipped=%d%nkeys=%d%nbytes=%d%nmillis=%d%n",
+                compiler.writer.getEntryCount(), compiler.skipped, compiler.writer.getKeyCount(),
+                index.length(), millis);
+
+        System.out.printf(Locale.US, "Compiled %d entries (%d skipped) with %d keys into %s: " +
+                        "%.1f MB in %.1f s%n", compiler.writer.getEntryCount(), compiler.skipped,
+                compiler.writer.getKeyCount(), index.getPath(), index.length() / 1048576.0,
+                millis / 1000.0);
+
+        // keeps a report next to the build so the footprint can be tracked across releases
+        File reportDir = report.getParentFile();
+        if (reportDir != null && !reportDir.isDirectory() && !reportDir.mkdirs())
+            throw new IOException("Unable to create " + reportDir);
+
+        PrintWriter pw = new PrintWriter(report, "UTF-8");
+        try {
+            pw.print(summary);
+        } finally {
+            pw.close();
+        }
+    }
+
+    /**
+     * Adds a line of the dump to the index, skipping lines the app would not show anything for
+     * @param line line of the dump
+     */
+    private void add(String line) {
+        if (line.isEmpty() || line.startsWith(PREFIX_HEADER))
+            return;
+
+        int sequence = line.indexOf(PREFIX_SEQUENCE);
+        if (sequence != -1)
+            line = line.substring(0, sequence + 1);
+
+        // runs the entry through the same classification as the app, without a query to match
+        Vocabulary vocabulary = tokenizer.parseLine("", line);
+        if (vocabulary.getDefinitions() == null) {
+            skipped++;
+            return;
+        }
+
+        writer.add(line, keys(line));
+    }
+
+    /**
+     * Reads every line of the dump
+     * @param edict EDICT dump
+     * @param charset encoding of the dump
+     * @throws IOException if the dump cannot be read
+     */
+    private void read(File edict, String charset) throws IOException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(edict),
+                charset));
+        try {
+            String line;
+            while ((line = br.readLine()) != null)
+                add(line);
+        } finally {
+            br.close();
+        }
+    }
+
+    /**
+     * Writes the index
+     * @param index file to write the index to
+     * @throws IOException if the index cannot be written
+     */
+    private void write(File index) throws IOException {
+        File dir = index.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Unable to create " + dir);
+
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(index));
+        try {
+            writer.write(os);
+        } finally {
+            os.close();
+        }
+    }
+
+    /**
+     * Extracts the kanji and readings of a line, without their codes, as the keys of the entry
+     * @param line raw EDICT line
+     * @return keys of the entry
+     */
+    private static Set<String> keys(String line) {
+        Set<String> keys = new LinkedHashSet<>();
+
+        int end = line.indexOf(SEPARATOR_PARTS);
+        if (end == -1)
+            end = line.length();
+
+        int readings = line.indexOf(READING_OPEN);
+        int kanjiEnd = readings != -1 && readings < end ? readings : end;
+        addKeys(keys, line, 0, kanjiEnd);
+
+        if (readings != -1 && readings < end) {
+            int readingsEnd = line.indexOf(READING_CLOSE, readings);
+            if (readingsEnd != -1 && readingsEnd < end)
+                addKeys(keys, line, readings + 1, readingsEnd);
+        }
+
+        return keys;
+    }
+
+    /**
+     * Adds every kanji or reading of a set as a key, folded as queries are when they are looked up
+     */
+    private static void addKeys(Set<String> keys, String line, int start, int end) {
+        StringBuilder key = new StringBuilder();
+        boolean code = false;
+        for (int i = start; i <= end; i++) {
+            char c = i == end ? SEPARATOR_SET : line.charAt(i);
+            if (c == SEPARATOR_SET) {
+                String folded = KanaNormalizer.key(key.toString());
+                if (!folded.isEmpty())
+                    keys.add(folded);
+
+                key.setLength(0);
+                code = false;
+            } else if (c == CODE_OPEN) {
+                code = true;
+            } else if (c == CODE_CLOSE) {
+                code = false;
+            } else if (!code) {
+                key.append(c);
+            }
+        }
+    }
+}
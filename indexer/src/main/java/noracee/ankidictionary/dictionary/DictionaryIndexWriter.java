@@ -0,0 +1,203 @@
+package noracee.ankidictionary.dictionary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes entries and their keys in the layout read by {@link DictionaryIndex DictionaryIndex}
+ */
+
+public class DictionaryIndexWriter {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Orders keys by their unsigned UTF-8 bytes, the order the index is searched in
+    private static final Comparator<byte[]> ORDER = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] a, byte[] b) {
+            int min = Math.min(a.length, b.length);
+            for (int i = 0; i < min; i++) {
+                int difference = (a[i] & 0xFF) - (b[i] & 0xFF);
+                if (difference != 0)
+                    return difference;
+            }
+
+            return a.length - b.length;
+        }
+    };
+
+    private List<byte[]> entries;
+    private Map<String, List<Integer>> keys;
+
+    public DictionaryIndexWriter() {
+        entries = new ArrayList<>();
+        keys = new HashMap<>();
+    }
+
+    /**
+     * Adds an entry to the index
+     * @param line raw EDICT line of the entry
+     * @param entryKeys kanji and readings the entry can be looked up with
+     */
+    public void add(String line, Iterable<String> entryKeys) {
+        int id = entries.size();
+
+        byte[] bytes = line.getBytes(UTF_8);
+        entries.add(bytes);
+
+        for (String key : entryKeys) {
+            if (key.isEmpty())
+                continue;
+
+            List<Integer> ids = keys.get(key);
+            if (ids == null) {
+                ids = new ArrayList<>(1);
+                keys.put(key, ids);
+            }
+
+            // the same key can appear both as a kanji and as a reading
+            if (ids.isEmpty() || ids.get(ids.size() - 1) != id)
+                ids.add(id);
+        }
+    }
+
+    /**
+     * Retrieves the number of entries added
+     * @return number of entries
+     */
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Retrieves the number of distinct keys added
+     * @return number of keys
+     */
+    public int getKeyCount() {
+        return keys.size();
+    }
+
+    /**
+     * Writes the index
+     * @param os stream to write the index to
+     * @throws IOException if the index cannot be written
+     */
+    public void write(OutputStream os) throws IOException {
+        byte[][] sorted = new byte[keys.size()][];
+        List<List<Integer>> postings = sortKeys(sorted);
+
+        int blockCount = (sorted.length + DictionaryIndex.SIZE_BLOCK - 1) / DictionaryIndex.SIZE_BLOCK;
+        int[] blockOffsets = new int[blockCount];
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+
+        int blockTableOffset = DictionaryIndex.SIZE_HEADER;
+        int blocksOffset = blockTableOffset + blockCount * 4;
+
+        byte[] previous = null;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i % DictionaryIndex.SIZE_BLOCK == 0) {
+                blockOffsets[i / DictionaryIndex.SIZE_BLOCK] = blocksOffset + blocks.size();
+                previous = null;
+            }
+
+            byte[] key = sorted[i];
+            int shared = previous == null ? 0 : sharedLength(previous, key);
+            writeVarint(blocks, shared);
+            writeVarint(blocks, key.length - shared);
+            blocks.write(key, shared, key.length - shared);
+
+            List<Integer> ids = postings.get(i);
+            writeVarint(blocks, ids.size());
+            int last = 0;
+            for (int id : ids) {
+                writeVarint(blocks, id - last);
+                last = id;
+            }
+
+            previous = key;
+        }
+
+        int entryTableOffset = blocksOffset + blocks.size();
+        int entryDataOffset = entryTableOffset + (entries.size() + 1) * 4;
+
+        DataOutputStream dos = new DataOutputStream(os);
+        dos.writeInt(DictionaryIndex.MAGIC);
+        dos.writeInt(DictionaryIndex.VERSION);
+        dos.writeInt(sorted.length);
+        dos.writeInt(blockCount);
+        dos.writeInt(entries.size());
+        dos.writeInt(blockTableOffset);
+        dos.writeInt(entryTableOffset);
+        dos.writeInt(entryDataOffset);
+
+        for (int offset : blockOffsets)
+            dos.writeInt(offset);
+
+        blocks.writeTo(dos);
+
+        int offset = 0;
+        for (byte[] entry : entries) {
+            dos.writeInt(offset);
+            offset += entry.length;
+        }
+        dos.writeInt(offset);
+
+        for (byte[] entry : entries)
+            dos.write(entry);
+
+        dos.flush();
+    }
+
+    /**
+     * Sorts the keys in the order they are searched in
+     * @param sorted array to be filled with the sorted keys as UTF-8
+     * @return entry ids of each sorted key
+     */
+    private List<List<Integer>> sortKeys(byte[][] sorted) {
+        Map<byte[], List<Integer>> byBytes = new IdentityHashMap<>();
+        int i = 0;
+        for (Map.Entry<String, List<Integer>> entry : keys.entrySet()) {
+            sorted[i] = entry.getKey().getBytes(UTF_8);
+            byBytes.put(sorted[i], entry.getValue());
+            i++;
+        }
+
+        Arrays.sort(sorted, ORDER);
+
+        List<List<Integer>> postings = new ArrayList<>(sorted.length);
+        for (byte[] key : sorted)
+            postings.add(byBytes.get(key));
+
+        return postings;
+    }
+
+    private static int sharedLength(byte[] a, byte[] b) {
+        int min = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < min && a[i] == b[i])
+            i++;
+
+        return i;
+    }
+
+    /**
+     * Writes an unsigned variable length integer as read by the index
+     */
+    private static void writeVarint(OutputStream os, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            os.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        os.write(value);
+    }
+}